@@ -0,0 +1,203 @@
+// CoryCaddellAllocationCheck.java
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/** Checks how many bytes the hash map and set allocate per operation.  The
+ * budgets assume HotSpot's C2 compiler with escape analysis, which removes
+ * the LinkedList iterators that lookups and updates create while walking a
+ * bucket.  Under the interpreter or C1 alone (-Xint, -XX:TieredStopAtLevel=1
+ * to 3, -XX:-DoEscapeAnalysis) those iterators are real and most checks
+ * would fail, so the check refuses to run there and exits with status 2.
+ * WARMUP_ROUNDS runs each operation millions of times before measuring,
+ * far past the point where C2 compiles it. */
+public class CoryCaddellAllocationCheck {
+	
+	// Number of keys each operation cycles through
+	private static final int KEY_COUNT = 1024;
+	
+	// Number of operations measured per check
+	private static final int OPERATIONS = 200_000;
+	
+	// Number of untimed rounds so the JIT can remove temporary objects first
+	private static final int WARMUP_ROUNDS = 20;
+	
+	// Allocation counter for the current thread
+	private static com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	
+	// Keeps results alive so the JIT can't drop the operations being measured
+	private static long sink = 0;
+	
+	// Number of checks over budget
+	private static int failures = 0;
+	
+	/** Measure bytes allocated per operation for the hash map and set and
+	 * exit with status 1 if any operation goes over its budget.  Run it after
+	 * changing either class so new hot-path allocation fails loudly */
+	public static void main(String[] args) {
+		String unsupported = unsupportedCompiler();
+		if (unsupported != null) {
+			System.out.println("Budgets assume C2 with escape analysis, but " + unsupported);
+			System.exit(2);
+		}
+		
+		String[] keys = new String[KEY_COUNT];
+		String[] missingKeys = new String[KEY_COUNT];
+		Integer[] values = new Integer[KEY_COUNT];
+		for (int i = 0; i < KEY_COUNT; i++) {
+			keys[i] = "key" + i;
+			missingKeys[i] = "missing" + i;
+			values[i] = i + 1000;	// Outside the Integer cache, so boxed once here
+		}
+		
+		CoryCaddellHashMap<String, Integer> map = new CoryCaddellHashMap<>();
+		CoryCaddellHashSet<String> set = new CoryCaddellHashSet<>();
+		for (int i = 0; i < KEY_COUNT; i++) {
+			map.put(keys[i], values[i]);
+			set.add(keys[i]);
+		}
+		
+		System.out.printf("%-40s%12s%12s\n", "Operation", "Bytes/op", "Budget");
+		System.out.printf("%-40s%12s%12s\n", "---------", "--------", "------");
+		
+		// Lookups and in-place updates must not allocate at all
+		check("HashMap.get (hit)", 0, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				sink += map.get(keys[i % KEY_COUNT]);
+			}
+		});
+		
+		check("HashMap.get (miss)", 0, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				sink += map.get(missingKeys[i % KEY_COUNT]) == null ? 1 : 0;
+			}
+		});
+		
+		check("HashMap.containsKey", 0, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				sink += map.containsKey(keys[i % KEY_COUNT]) ? 1 : 0;
+			}
+		});
+		
+		check("HashMap.put (existing key)", 0, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				map.put(keys[i % KEY_COUNT], values[(i + 1) % KEY_COUNT]);
+			}
+		});
+		
+		// A new key costs one Entry and one list node
+		check("HashMap.put + remove (new key)", 64, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				map.put(missingKeys[i % KEY_COUNT], values[i % KEY_COUNT]);
+				map.remove(missingKeys[i % KEY_COUNT]);
+			}
+		});
+		
+		check("HashSet.contains (hit)", 0, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				sink += set.contains(keys[i % KEY_COUNT]) ? 1 : 0;
+			}
+		});
+		
+		check("HashSet.contains (miss)", 0, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				sink += set.contains(missingKeys[i % KEY_COUNT]) ? 1 : 0;
+			}
+		});
+		
+		// A new element costs one list node
+		check("HashSet.add + remove (new element)", 32, () -> {
+			for (int i = 0; i < OPERATIONS; i++) {
+				set.add(missingKeys[i % KEY_COUNT]);
+				set.remove(missingKeys[i % KEY_COUNT]);
+			}
+		});
+		
+		// Growing from empty rehashes ten times.  Rehashing only allocates new
+		// bucket arrays and lists, so the cost per entry stays near a plain put
+		check("HashMap build from empty (per entry)", 192, () -> {
+			for (int i = 0; i < OPERATIONS / KEY_COUNT; i++) {
+				CoryCaddellHashMap<String, Integer> grown = new CoryCaddellHashMap<>();
+				for (int j = 0; j < KEY_COUNT; j++) {
+					grown.put(keys[j], values[j]);
+				}
+				sink += grown.size();
+			}
+		}, OPERATIONS / KEY_COUNT * KEY_COUNT);
+		
+		// The iterator copies the set into a list, one reference per element
+		check("HashSet.iterator (per element)", 16, () -> {
+			for (int i = 0; i < OPERATIONS / KEY_COUNT; i++) {
+				for (String key: set) {
+					sink += key.length();
+				}
+			}
+		}, OPERATIONS / KEY_COUNT * KEY_COUNT);
+		
+		if (failures > 0) {
+			System.out.println(failures + " operation(s) over budget");
+			System.exit(1);
+		}
+		System.out.println("All operations within budget");
+	}
+	
+	/** Return why this JVM can't meet the budgets, or null if it runs C2 with
+	 * escape analysis and allocation elimination on */
+	private static String unsupportedCompiler() {
+		com.sun.management.HotSpotDiagnosticMXBean hotSpot =
+				ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+		if (hotSpot == null) {
+			return "this is not a HotSpot JVM";
+		}
+		
+		try {
+			if (!flag(hotSpot, "UseCompiler")) {
+				return "the JIT is off (-Xint)";
+			}
+			if (flag(hotSpot, "TieredCompilation")
+					&& Integer.parseInt(hotSpot.getVMOption("TieredStopAtLevel").getValue()) < 4) {
+				return "-XX:TieredStopAtLevel keeps code out of C2";
+			}
+			if (!flag(hotSpot, "DoEscapeAnalysis") || !flag(hotSpot, "EliminateAllocations")) {
+				return "escape analysis or allocation elimination is off";
+			}
+		}
+		catch (IllegalArgumentException ex) {
+			return "this JVM has no C2 compiler";	// C2 flags don't exist without it
+		}
+		
+		return null;
+	}
+	
+	/** Return the value of a boolean HotSpot flag */
+	private static boolean flag(com.sun.management.HotSpotDiagnosticMXBean hotSpot, String name) {
+		return Boolean.parseBoolean(hotSpot.getVMOption(name).getValue());
+	}
+	
+	/** Run body until warm, then measure it and compare bytes per operation to budget */
+	private static void check(String name, long budget, Runnable body) {
+		check(name, budget, body, OPERATIONS);
+	}
+	
+	/** Run body, which performs the specified number of operations, until warm,
+	 * then measure it and compare bytes per operation to budget */
+	private static void check(String name, long budget, Runnable body, int operations) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			body.run();
+		}
+		
+		long before = threads.getCurrentThreadAllocatedBytes();
+		body.run();
+		long bytes = threads.getCurrentThreadAllocatedBytes() - before;
+		
+		// Compare totals so an allocation every few calls can't round down to 0
+		boolean over = bytes > budget * operations;
+		if (over) {
+			failures++;
+		}
+		
+		System.out.printf("%-40s%12.2f%12d%s\n", name, (double) bytes / operations, budget,
+				over ? "  OVER" : "");
+	}
+}
@@ -0,0 +1,92 @@
+// CoryCaddellBatchLookupBenchmark.java
+
+import java.util.*;
+
+public class CoryCaddellBatchLookupBenchmark {
+	
+	// Number of entries in the map, enough that the table doesn't fit in cache
+	private static final int ENTRY_COUNT = 1 << 20;
+	
+	// Number of keys looked up per measurement
+	private static final int LOOKUPS = 2_000_000;
+	
+	// Number of untimed rounds so the JIT has compiled both paths first
+	private static final int WARMUP_ROUNDS = 10;
+	
+	// Number of timed rounds; the fastest one is reported
+	private static final int TIMED_ROUNDS = 5;
+	
+	// Keeps results alive so the JIT can't drop the lookups being measured
+	private static long sink = 0;
+	
+	/** Print nanoseconds per key for looking up random batches of keys with
+	 * getAll() and with one get() per key, for batch sizes 50 to 500.  Half
+	 * the keys in each batch are in the map */
+	public static void main(String[] args) {
+		CoryCaddellHashMap<String, Integer> map = new CoryCaddellHashMap<>();
+		String[] keys = new String[ENTRY_COUNT * 2];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = "key" + i;
+			if (i < ENTRY_COUNT) {
+				map.put(keys[i], i);
+			}
+		}
+		
+		System.out.printf("%-12s%16s%16s%12s\n", "Batch size", "get() ns/key", "getAll() ns/key", "Speedup");
+		System.out.printf("%-12s%16s%16s%12s\n", "----------", "------------", "---------------", "-------");
+		
+		for (int batchSize: new int[] {50, 100, 200, 500}) {
+			String[][] batches = batches(keys, batchSize);
+			double single = fastest(() -> getEach(map, batches));
+			double batched = fastest(() -> getAll(map, batches));
+			System.out.printf("%-12d%16.1f%16.1f%11.2fx\n", batchSize, single, batched, single / batched);
+		}
+	}
+	
+	/** Split LOOKUPS random keys, drawn from both halves of keys, into batches */
+	private static String[][] batches(String[] keys, int batchSize) {
+		Random random = new Random(batchSize);
+		String[][] batches = new String[LOOKUPS / batchSize][batchSize];
+		for (String[] batch: batches) {
+			for (int i = 0; i < batchSize; i++) {
+				batch[i] = keys[random.nextInt(keys.length)];
+			}
+		}
+		return batches;
+	}
+	
+	/** Look up every batch one key at a time */
+	private static void getEach(CoryCaddellHashMap<String, Integer> map, String[][] batches) {
+		for (String[] batch: batches) {
+			for (String key: batch) {
+				if (map.get(key) != null) {
+					sink++;
+				}
+			}
+		}
+	}
+	
+	/** Look up every batch with getAll() */
+	private static void getAll(CoryCaddellHashMap<String, Integer> map, String[][] batches) {
+		Integer[] out = new Integer[batches[0].length];
+		for (String[] batch: batches) {
+			sink += map.getAll(batch, out);
+		}
+	}
+	
+	/** Run body until warm and return the fastest timed run in nanoseconds per key */
+	private static double fastest(Runnable body) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			body.run();
+		}
+		
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < TIMED_ROUNDS; i++) {
+			long start = System.nanoTime();
+			body.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		
+		return (double) best / LOOKUPS;
+	}
+}
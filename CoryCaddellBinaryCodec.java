@@ -0,0 +1,509 @@
+// CoryCaddellBinaryCodec.java
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/** Compact binary format for CoryCaddellHashMap and CoryCaddellHashSet
+ * contents.  Keys, values and elements may be String, Integer, Long or null.
+ * Lengths and numbers are varints, and a string that appears more than once
+ * is written in full the first time and as a dictionary index after that.
+ * The body can optionally be compressed with an LZ4-style block compressor.
+ * Decoding presizes the table from the stored count, so it never rehashes.
+ *
+ * A frame is a 14 byte header followed by the body:
+ *   magic (4) | kind (1) | flags (1) | raw body length (4) | stored body length (4) */
+public class CoryCaddellBinaryCodec {
+	
+	// First four bytes of every frame, "CCB1"
+	private static final int MAGIC = 0x43434231;
+	
+	// Size of the frame header in bytes
+	private static final int HEADER_SIZE = 14;
+	
+	// Largest raw or stored body; encode refuses more and decode treats it as corruption
+	private static final int MAXIMUM_BODY_SIZE = 1 << 26;
+	
+	// Most bytes one compressed byte can expand to, through a 255 length byte
+	private static final int MAXIMUM_EXPANSION = 255;
+	
+	// Frame kinds
+	private static final byte MAP = 1;
+	private static final byte SET = 2;
+	
+	// Frame flag set when the body is compressed
+	private static final byte COMPRESSED = 1;
+	
+	// Value tags
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte STRING_REF = 2;
+	private static final byte INTEGER = 3;
+	private static final byte LONG = 4;
+	
+	// Shortest match the compressor looks for, and the hash table size for finding them
+	private static final int MIN_MATCH = 4;
+	private static final int HASH_BITS = 12;
+	
+	// The last bytes of a block are always literals, as in LZ4
+	private static final int LAST_LITERALS = 5;
+	private static final int MATCH_FIND_LIMIT = 12;
+	
+	// Farthest back a match may refer to
+	private static final int MAX_OFFSET = 65535;
+	
+	/** Encode map into a frame, compressing the body if compress is true.
+	 * Throws IllegalArgumentException if the body would pass 64 MB, the most
+	 * decodeMap() accepts */
+	public static <K, V> ByteBuffer encode(CoryCaddellHashMap<K, V> map, boolean compress) {
+		Writer writer = new Writer();
+		
+		writer.writeVarint(map.size());
+		map.forEach((key, value) -> {
+			writer.writeValue(key);
+			writer.writeValue(value);
+		});
+		
+		return frame(MAP, writer, compress);
+	}
+	
+	/** Encode set into a frame, compressing the body if compress is true.
+	 * Throws IllegalArgumentException if the body would pass 64 MB, the most
+	 * decodeSet() accepts */
+	public static <E> ByteBuffer encode(CoryCaddellHashSet<E> set, boolean compress) {
+		Writer writer = new Writer();
+		
+		writer.writeVarint(set.size());
+		for (E e: set) {
+			writer.writeValue(e);
+		}
+		
+		return frame(SET, writer, compress);
+	}
+	
+	/** Decode a map frame from buffer, advancing its position past the frame */
+	@SuppressWarnings("unchecked")
+	public static <K, V> CoryCaddellHashMap<K, V> decodeMap(ByteBuffer buffer) throws IOException {
+		Reader reader = unframe(buffer, MAP);
+		
+		int count = reader.readCount();
+		if (count > reader.remaining() / 2) {	// An entry takes at least two tag bytes
+			throw new IOException("Count is corrupt");
+		}
+		
+		CoryCaddellHashMap<K, V> map = new CoryCaddellHashMap<>(presizedCapacity(count));
+		for (int i = 0; i < count; i++) {
+			K key = (K) reader.readValue();
+			map.put(key, (V) reader.readValue());
+		}
+		
+		return map;
+	}
+	
+	/** Decode a set frame from buffer, advancing its position past the frame */
+	@SuppressWarnings("unchecked")
+	public static <E> CoryCaddellHashSet<E> decodeSet(ByteBuffer buffer) throws IOException {
+		Reader reader = unframe(buffer, SET);
+		
+		int count = reader.readCount();
+		if (count > reader.remaining()) {	// An element takes at least one tag byte
+			throw new IOException("Count is corrupt");
+		}
+		
+		CoryCaddellHashSet<E> set = new CoryCaddellHashSet<>(presizedCapacity(count));
+		for (int i = 0; i < count; i++) {
+			set.add((E) reader.readValue());
+		}
+		
+		return set;
+	}
+	
+	/** Write map to channel as one frame */
+	public static <K, V> void writeMap(WritableByteChannel channel, CoryCaddellHashMap<K, V> map,
+			boolean compress) throws IOException {
+		writeFully(channel, encode(map, compress));
+	}
+	
+	/** Write set to channel as one frame */
+	public static <E> void writeSet(WritableByteChannel channel, CoryCaddellHashSet<E> set,
+			boolean compress) throws IOException {
+		writeFully(channel, encode(set, compress));
+	}
+	
+	/** Read one map frame from channel */
+	public static <K, V> CoryCaddellHashMap<K, V> readMap(ReadableByteChannel channel) throws IOException {
+		return decodeMap(readFrame(channel));
+	}
+	
+	/** Read one set frame from channel */
+	public static <E> CoryCaddellHashSet<E> readSet(ReadableByteChannel channel) throws IOException {
+		return decodeSet(readFrame(channel));
+	}
+	
+	/** Return an initial capacity that holds count entries without a rehash */
+	private static int presizedCapacity(int count) {
+		return (int) (count / 0.75f) + 1;
+	}
+	
+	/** Wrap the writer's bytes in a frame header, compressing them if asked */
+	private static ByteBuffer frame(byte kind, Writer writer, boolean compress) {
+		// Never write a frame that unframe() would reject.  Compression can
+		// only grow a body that is already near the limit by a few bytes
+		byte[] body = writer.bytes.toByteArray();
+		byte[] stored = body.length <= MAXIMUM_BODY_SIZE && compress ? compress(body) : body;
+		if (stored.length > MAXIMUM_BODY_SIZE) {
+			throw new IllegalArgumentException("Body of " + stored.length
+					+ " bytes is over the " + MAXIMUM_BODY_SIZE + " byte frame limit");
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + stored.length);
+		buffer.putInt(MAGIC);
+		buffer.put(kind);
+		buffer.put(compress ? COMPRESSED : 0);
+		buffer.putInt(body.length);
+		buffer.putInt(stored.length);
+		buffer.put(stored);
+		buffer.flip();
+		
+		return buffer;
+	}
+	
+	/** Check the frame header in buffer and return a reader over its body */
+	private static Reader unframe(ByteBuffer buffer, byte kind) throws IOException {
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+			throw new IOException("Not a CoryCaddellBinaryCodec frame");
+		}
+		if (buffer.get() != kind) {
+			throw new IOException(kind == MAP ? "Frame does not hold a map" : "Frame does not hold a set");
+		}
+		
+		byte flags = buffer.get();
+		int rawLength = buffer.getInt();
+		int storedLength = buffer.getInt();
+		if (rawLength < 0 || rawLength > MAXIMUM_BODY_SIZE
+				|| storedLength < 0 || storedLength > MAXIMUM_BODY_SIZE) {
+			throw new IOException("Frame is corrupt");
+		}
+		if (storedLength > buffer.remaining()) {
+			throw new IOException("Frame is truncated");
+		}
+		
+		// Check rawLength before decompress() allocates that much
+		boolean compressed = (flags & COMPRESSED) != 0;
+		if (compressed ? rawLength > (long) storedLength * MAXIMUM_EXPANSION : rawLength != storedLength) {
+			throw new IOException("Frame is corrupt");
+		}
+		
+		byte[] stored = new byte[storedLength];
+		buffer.get(stored);
+		
+		byte[] body = compressed ? decompress(stored, rawLength) : stored;
+		return new Reader(body);
+	}
+	
+	/** Write every remaining byte of buffer to channel */
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	
+	/** Read one whole frame from channel into a buffer */
+	private static ByteBuffer readFrame(ReadableByteChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(channel, header);
+		
+		int storedLength = header.getInt(HEADER_SIZE - 4);
+		if (storedLength < 0 || storedLength > MAXIMUM_BODY_SIZE) {
+			throw new IOException("Frame is corrupt");
+		}
+		
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + storedLength);
+		frame.put(header.flip());
+		readFully(channel, frame);
+		
+		return frame.flip();
+	}
+	
+	/** Fill buffer from channel */
+	private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("Channel ended inside a frame");
+			}
+		}
+	}
+	
+	/** Compress src into an LZ4-style block: a run of sequences, each a token
+	 * of literal and match lengths, the literals, a 2 byte offset back to the
+	 * match and any extra length bytes */
+	private static byte[] compress(byte[] src) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(src.length / 2 + 16);
+		int[] table = new int[1 << HASH_BITS];	// Last position of each 4 byte hash
+		Arrays.fill(table, -1);
+		
+		int anchor = 0;	// Start of the literals not yet written
+		int i = 0;
+		int limit = src.length - MATCH_FIND_LIMIT;
+		
+		while (i < limit) {
+			int sequence = readIntLE(src, i);
+			int h = (sequence * -1640531535) >>> (32 - HASH_BITS);
+			int ref = table[h];
+			table[h] = i;
+			
+			if (ref >= 0 && i - ref <= MAX_OFFSET && readIntLE(src, ref) == sequence) {
+				int matchLength = MIN_MATCH;
+				while (i + matchLength < src.length - LAST_LITERALS
+						&& src[ref + matchLength] == src[i + matchLength]) {
+					matchLength++;
+				}
+				
+				writeSequence(out, src, anchor, i - anchor, i - ref, matchLength);
+				i += matchLength;
+				anchor = i;
+			}
+			else {
+				i++;
+			}
+		}
+		
+		// The block ends with a sequence of literals and no match
+		int literalLength = src.length - anchor;
+		out.write(Math.min(literalLength, 15) << 4);
+		writeExtraLength(out, literalLength - 15);
+		out.write(src, anchor, literalLength);
+		
+		return out.toByteArray();
+	}
+	
+	/** Write one sequence of literals followed by a match */
+	private static void writeSequence(ByteArrayOutputStream out, byte[] src, int literalStart,
+			int literalLength, int offset, int matchLength) {
+		out.write((Math.min(literalLength, 15) << 4) | Math.min(matchLength - MIN_MATCH, 15));
+		writeExtraLength(out, literalLength - 15);
+		out.write(src, literalStart, literalLength);
+		out.write(offset & 0xFF);
+		out.write(offset >>> 8);
+		writeExtraLength(out, matchLength - MIN_MATCH - 15);
+	}
+	
+	/** Write the part of a length that didn't fit in its 4 token bits */
+	private static void writeExtraLength(ByteArrayOutputStream out, int extra) {
+		if (extra < 0) {
+			return;	// Fit in the token
+		}
+		while (extra >= 255) {
+			out.write(255);
+			extra -= 255;
+		}
+		out.write(extra);
+	}
+	
+	/** Expand a block written by compress() into rawLength bytes */
+	private static byte[] decompress(byte[] src, int rawLength) throws IOException {
+		byte[] dst = new byte[rawLength];
+		int in = 0;
+		int out = 0;
+		
+		try {
+			while (in < src.length) {
+				int token = src[in++] & 0xFF;
+				
+				// Copy the literals
+				int literalLength = token >>> 4;
+				if (literalLength == 15) {
+					int b;
+					do {
+						b = src[in++] & 0xFF;
+						literalLength += b;
+					} while (b == 255);
+				}
+				System.arraycopy(src, in, dst, out, literalLength);
+				in += literalLength;
+				out += literalLength;
+				
+				if (in == src.length) {
+					break;	// Last sequence has no match
+				}
+				
+				// Copy the match, which may overlap the bytes it produces
+				int offset = (src[in++] & 0xFF) | ((src[in++] & 0xFF) << 8);
+				int matchLength = token & 0x0F;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = src[in++] & 0xFF;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				
+				int from = out - offset;
+				if (offset == 0 || from < 0) {
+					throw new IOException("Compressed block is corrupt");
+				}
+				for (int j = 0; j < matchLength; j++) {
+					dst[out++] = dst[from + j];
+				}
+			}
+		}
+		catch (IndexOutOfBoundsException ex) {
+			throw new IOException("Compressed block is corrupt", ex);
+		}
+		
+		if (out != rawLength) {
+			throw new IOException("Compressed block is corrupt");
+		}
+		return dst;
+	}
+	
+	/** Read 4 bytes at index as a little-endian int */
+	private static int readIntLE(byte[] bytes, int index) {
+		return (bytes[index] & 0xFF) | ((bytes[index + 1] & 0xFF) << 8)
+				| ((bytes[index + 2] & 0xFF) << 16) | ((bytes[index + 3] & 0xFF) << 24);
+	}
+	
+	/** Writes tagged values and varints, remembering strings already written */
+	private static class Writer {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		// Index of each string written so far
+		CoryCaddellHashMap<String, Integer> dictionary = new CoryCaddellHashMap<>();
+		
+		/** Write value with its type tag */
+		void writeValue(Object value) {
+			if (value == null) {
+				bytes.write(NULL);
+			}
+			else if (value instanceof String) {
+				Integer index = dictionary.get((String) value);
+				if (index != null) {
+					bytes.write(STRING_REF);
+					writeVarint(index);
+				}
+				else {
+					byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+					bytes.write(STRING);
+					writeVarint(utf8.length);
+					bytes.write(utf8, 0, utf8.length);
+					dictionary.put((String) value, dictionary.size());
+				}
+			}
+			else if (value instanceof Integer) {
+				bytes.write(INTEGER);
+				writeVarint(zigZag((Integer) value));
+			}
+			else if (value instanceof Long) {
+				bytes.write(LONG);
+				writeVarint(zigZag((Long) value));
+			}
+			else {
+				throw new IllegalArgumentException("Can't encode " + value.getClass().getName());
+			}
+		}
+		
+		/** Write value 7 bits at a time, low bits first, high bit meaning more follow */
+		void writeVarint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				bytes.write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			bytes.write((int) value);
+		}
+		
+		/** Map signed to unsigned so small negative numbers stay short */
+		private static long zigZag(long value) {
+			return (value << 1) ^ (value >> 63);
+		}
+	}
+	
+	/** Reads what a Writer wrote */
+	private static class Reader {
+		byte[] bytes;
+		int position = 0;
+		
+		// Strings read so far, by dictionary index
+		ArrayList<String> dictionary = new ArrayList<>();
+		
+		Reader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+		
+		/** Return the number of body bytes not yet read */
+		int remaining() {
+			return bytes.length - position;
+		}
+		
+		/** Read an entry or element count */
+		int readCount() throws IOException {
+			long count = readVarint();
+			if (count < 0 || count > Integer.MAX_VALUE) {
+				throw new IOException("Count is corrupt");
+			}
+			return (int) count;
+		}
+		
+		/** Read one tagged value */
+		Object readValue() throws IOException {
+			if (position >= bytes.length) {
+				throw new EOFException("Body ended early");
+			}
+			
+			byte tag = bytes[position++];
+			if (tag == NULL) {
+				return null;
+			}
+			else if (tag == STRING) {
+				int length = readCount();
+				if (length > bytes.length - position) {
+					throw new EOFException("Body ended early");
+				}
+				String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+				position += length;
+				dictionary.add(value);
+				return value;
+			}
+			else if (tag == STRING_REF) {
+				long index = readVarint();
+				if (index < 0 || index >= dictionary.size()) {
+					throw new IOException("String reference is corrupt");
+				}
+				return dictionary.get((int) index);
+			}
+			else if (tag == INTEGER) {
+				return (int) unZigZag(readVarint());
+			}
+			else if (tag == LONG) {
+				return unZigZag(readVarint());
+			}
+			else {
+				throw new IOException("Unknown value tag: " + tag);
+			}
+		}
+		
+		/** Read a varint written by Writer.writeVarint() */
+		long readVarint() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				if (position >= bytes.length) {
+					throw new EOFException("Body ended early");
+				}
+				byte b = bytes[position++];
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;	// High bit clear, so this was the last byte
+				}
+			}
+			throw new IOException("Varint is too long");
+		}
+		
+		/** Undo Writer.zigZag() */
+		private static long unZigZag(long value) {
+			return (value >>> 1) ^ -(value & 1);
+		}
+	}
+}
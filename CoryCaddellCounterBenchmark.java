@@ -0,0 +1,127 @@
+// CoryCaddellCounterBenchmark.java
+
+public class CoryCaddellCounterBenchmark {
+	
+	// Number of distinct keys counted, one per state as in the assignment data
+	private static final int KEY_COUNT = 52;
+	
+	// Number of counts measured per single-threaded run
+	private static final int OPERATIONS = 10_000_000;
+	
+	// Number of counts each thread makes in the contended runs
+	private static final int OPERATIONS_PER_THREAD = 2_000_000;
+	
+	// Number of untimed runs so the JIT has compiled each path first
+	private static final int WARMUP_ROUNDS = 5;
+	
+	// Number of timed runs; the fastest one is reported
+	private static final int TIMED_ROUNDS = 5;
+	
+	// Keeps results alive so the JIT can't drop the counting being measured
+	private static long sink = 0;
+	
+	/** Print nanoseconds per count for CoryCaddellCounterMap.increment()
+	 * against get() and put(key, old + 1) on a CoryCaddellHashMap, then for
+	 * Striped against one synchronized counter map with several threads
+	 * counting at once.  The thread count is the first argument, or the
+	 * number of processors; contention needs more than one processor */
+	public static void main(String[] args) {
+		String[] keys = new String[KEY_COUNT];
+		for (int i = 0; i < KEY_COUNT; i++) {
+			keys[i] = "State" + i;
+		}
+		
+		System.out.printf("%-36s%12s\n", "Single thread", "ns/count");
+		System.out.printf("%-36s%12s\n", "-------------", "--------");
+		
+		double getPut = fastest(() -> {
+			CoryCaddellHashMap<String, Long> map = new CoryCaddellHashMap<>();
+			for (String key: keys) {
+				map.put(key, 0L);
+			}
+			for (int i = 0; i < OPERATIONS; i++) {
+				String key = keys[i % KEY_COUNT];
+				map.put(key, map.get(key) + 1);
+			}
+			sink += map.get(keys[0]);
+		}, OPERATIONS);
+		
+		double increment = fastest(() -> {
+			CoryCaddellCounterMap<String> counter = new CoryCaddellCounterMap<>();
+			for (int i = 0; i < OPERATIONS; i++) {
+				counter.increment(keys[i % KEY_COUNT]);
+			}
+			sink += counter.getCount(keys[0]);
+		}, OPERATIONS);
+		
+		System.out.printf("%-36s%12.1f\n", "HashMap get + put(old + 1)", getPut);
+		System.out.printf("%-36s%12.1f\n", "CounterMap.increment", increment);
+		System.out.printf("%-36s%11.2fx\n", "Speedup", getPut / increment);
+		
+		int threads = args.length > 0 ? Integer.parseInt(args[0])
+				: Runtime.getRuntime().availableProcessors();
+		System.out.printf("\n%-36s%12s\n", "Contended, " + threads + " threads", "ns/count");
+		System.out.printf("%-36s%12s\n", "--------------------", "--------");
+		
+		double locked = fastest(() -> {
+			CoryCaddellCounterMap<String> counter = new CoryCaddellCounterMap<>();
+			runThreads(threads, () -> {
+				for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+					synchronized (counter) {
+						counter.increment(keys[i % KEY_COUNT]);
+					}
+				}
+			});
+			sink += counter.getCount(keys[0]);
+		}, threads * OPERATIONS_PER_THREAD);
+		
+		double striped = fastest(() -> {
+			CoryCaddellCounterMap.Striped<String> counter = new CoryCaddellCounterMap.Striped<>();
+			runThreads(threads, () -> {
+				for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+					counter.increment(keys[i % KEY_COUNT]);
+				}
+			});
+			sink += counter.getCount(keys[0]);
+		}, threads * OPERATIONS_PER_THREAD);
+		
+		System.out.printf("%-36s%12.1f\n", "Synchronized CounterMap", locked);
+		System.out.printf("%-36s%12.1f\n", "Striped", striped);
+		System.out.printf("%-36s%11.2fx\n", "Speedup", locked / striped);
+	}
+	
+	/** Run body on the specified number of threads and wait for all of them */
+	private static void runThreads(int count, Runnable body) {
+		Thread[] threads = new Thread[count];
+		for (int i = 0; i < count; i++) {
+			threads[i] = new Thread(body);
+			threads[i].start();
+		}
+		
+		try {
+			for (Thread thread: threads) {
+				thread.join();
+			}
+		}
+		catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/** Run body, which makes the specified number of counts, until warm and
+	 * return the fastest timed run in nanoseconds per count */
+	private static double fastest(Runnable body, long operations) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			body.run();
+		}
+		
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < TIMED_ROUNDS; i++) {
+			long start = System.nanoTime();
+			body.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		
+		return (double) best / operations;
+	}
+}
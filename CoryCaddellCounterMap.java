@@ -0,0 +1,381 @@
+// CoryCaddellCounterMap.java
+
+import java.util.*;
+import java.util.function.ObjLongConsumer;
+
+/** A map from keys to primitive long counts.  increment() and add() find
+ * the key's slot once and update the count in place, so counting costs one
+ * probe and no boxing, where get() followed by put(key, old + 1) on a
+ * CoryCaddellHashMap costs two probes and a new Integer.  Keys are hashed
+ * with the same supplemental hash as CoryCaddellHashMap and kept in an open
+ * addressed table.  Use Striped when several threads count at once. */
+public class CoryCaddellCounterMap<K> implements CoryCaddellMap<K, Long> {
+	
+	// Define default table size.  Must be a power of 2
+	private static int DEFAULT_INITIAL_CAPACITY = 16;
+	
+	// Define maximum table size. 1 << 30 is the same as 2 ^ 30
+	private static int MAXIMUM_CAPACITY = 1 << 30;
+	
+	// Define load factor.  Linear probing needs it well below 1
+	private static float MAX_LOAD_FACTOR = 0.75f;
+	
+	// Current table capacity.  Capacity is a power of 2
+	private int capacity;
+	
+	// Number of keys in map
+	private int size = 0;
+	
+	// Per-slot key (null when the slot is empty), cached hash and count
+	private Object[] keys;
+	private int[] hashes;
+	private long[] counts;
+	
+	/** Construct a counter map with the default capacity */
+	public CoryCaddellCounterMap() {
+		this(DEFAULT_INITIAL_CAPACITY);
+	}
+	
+	/** Construct a counter map with the specified initial capacity */
+	public CoryCaddellCounterMap(int initialCapacity) {
+		capacity = 1;
+		while (capacity < Math.min(initialCapacity, MAXIMUM_CAPACITY)) {
+			capacity <<= 1;
+		}
+		
+		keys = new Object[capacity];
+		hashes = new int[capacity];
+		counts = new long[capacity];
+	}
+	
+	/** Add one to the count for key and return the new count */
+	public long increment(K key) {
+		return add(key, 1);
+	}
+	
+	/** Add delta to the count for key and return the new count.  A key that
+	 * is not in the map starts at 0 */
+	public long add(K key, long delta) {
+		int h = CoryCaddellHashMap.supplementalHash(key.hashCode());
+		int index = find(key, h);
+		
+		if (index < 0) {
+			// Check load factor, and keep one slot empty even in a tiny table
+			// since a probe for a missing key only stops on an empty slot
+			if (size >= capacity * MAX_LOAD_FACTOR || size + 1 >= capacity) {
+				rehash();
+				index = find(key, h);	// Slot moved with the new capacity
+			}
+			
+			// find() returned the free slot as ~index
+			index = ~index;
+			keys[index] = key;
+			hashes[index] = h;
+			size++;
+		}
+		
+		counts[index] += delta;
+		return counts[index];
+	}
+	
+	/** Return the count for key, or 0 if key is not in the map */
+	public long getCount(K key) {
+		int index = find(key, CoryCaddellHashMap.supplementalHash(key.hashCode()));
+		return index >= 0 ? counts[index] : 0;
+	}
+	
+	/** Return the k keys with the highest counts, highest first */
+	public List<CoryCaddellMap.Entry<K, Long>> topK(int k) {
+		// Min-heap of slot indexes holding the k largest counts seen so far.
+		// Sized by size too, so topK(Integer.MAX_VALUE) can ask for everything
+		PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(Math.min(k, size), 1),
+				(a, b) -> Long.compare(counts[a], counts[b]));
+		
+		for (int i = 0; i < capacity && k > 0; i++) {
+			if (keys[i] != null) {
+				if (heap.size() < k) {
+					heap.add(i);
+				}
+				else if (counts[i] > counts[heap.peek()]) {
+					heap.poll();
+					heap.add(i);
+				}
+			}
+		}
+		
+		LinkedList<CoryCaddellMap.Entry<K, Long>> list = new LinkedList<>();
+		while (!heap.isEmpty()) {
+			int index = heap.poll();
+			list.addFirst(new CoryCaddellMap.Entry<K, Long>(keyAt(index), counts[index]));
+		}
+		
+		return list;
+	}
+	
+	/** Perform action on every key and its count */
+	public void forEach(ObjLongConsumer<? super K> action) {
+		for (int i = 0; i < capacity; i++) {
+			if (keys[i] != null) {
+				action.accept(keyAt(i), counts[i]);
+			}
+		}
+	}
+	
+	@Override
+	/** Remove all keys from this map */
+	public void clear() {
+		size = 0;
+		Arrays.fill(keys, null);
+		Arrays.fill(counts, 0);
+	}
+	
+	@Override
+	/** Return true if specified key is in map */
+	public boolean containsKey(K key) {
+		return find(key, CoryCaddellHashMap.supplementalHash(key.hashCode())) >= 0;
+	}
+	
+	@Override
+	/** Return true if some key has the specified count.  No key has a null count */
+	public boolean containsValue(Long value) {
+		if (value == null) {
+			return false;
+		}
+		
+		for (int i = 0; i < capacity; i++) {
+			if (keys[i] != null && counts[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	/** Return a set of entries in the map */
+	public Set<CoryCaddellMap.Entry<K, Long>> entrySet() {
+		Set<CoryCaddellMap.Entry<K, Long>> set = new HashSet<>();
+		
+		forEach((key, count) -> set.add(new CoryCaddellMap.Entry<K, Long>(key, count)));
+		
+		return set;
+	}
+	
+	@Override
+	/** Return the count for key, or null if key is not in the map */
+	public Long get(K key) {
+		int index = find(key, CoryCaddellHashMap.supplementalHash(key.hashCode()));
+		return index >= 0 ? counts[index] : null;
+	}
+	
+	@Override
+	/** Return true if this map contains no keys */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	@Override
+	/** Return a set consisting of keys in this map */
+	public Set<K> keySet() {
+		Set<K> set = new HashSet<>();
+		
+		forEach((key, count) -> set.add(key));
+		
+		return set;
+	}
+	
+	@Override
+	/** Set the count for key and return it.  The count can't be null */
+	public Long put(K key, Long value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Count for " + key + " can't be null");
+		}
+		
+		int h = CoryCaddellHashMap.supplementalHash(key.hashCode());
+		int index = find(key, h);
+		
+		if (index >= 0) {
+			long oldValue = counts[index];
+			counts[index] = value;
+			
+			return oldValue;
+		}
+		
+		add(key, value);
+		return value;
+	}
+	
+	@Override
+	/** Remove the specified key */
+	public void remove(K key) {
+		int index = find(key, CoryCaddellHashMap.supplementalHash(key.hashCode()));
+		if (index < 0) {
+			return;
+		}
+		
+		// Shift later entries of the probe run back so lookups still find them
+		int hole = index;
+		int next = (hole + 1) & (capacity - 1);
+		while (keys[next] != null) {
+			int home = hashes[next] & (capacity - 1);
+			if (((next - home) & (capacity - 1)) >= ((next - hole) & (capacity - 1))) {
+				keys[hole] = keys[next];
+				hashes[hole] = hashes[next];
+				counts[hole] = counts[next];
+				hole = next;
+			}
+			next = (next + 1) & (capacity - 1);
+		}
+		
+		keys[hole] = null;
+		counts[hole] = 0;
+		size--;	// Decrease size
+	}
+	
+	@Override
+	/** Return the number of keys in this map */
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	/** Return a set consisting of counts in this map */
+	public Set<Long> values() {
+		Set<Long> set = new HashSet<>();
+		
+		forEach((key, count) -> set.add(count));
+		
+		return set;
+	}
+	
+	/** Return the slot holding key, or ~slot of the free slot where it would go */
+	private int find(K key, int h) {
+		int index = h & (capacity - 1);
+		while (keys[index] != null) {
+			if (hashes[index] == h && keys[index].equals(key)) {
+				return index;
+			}
+			index = (index + 1) & (capacity - 1);	// Linear probe
+		}
+		
+		return ~index;
+	}
+	
+	/** Return the key in slot index */
+	@SuppressWarnings("unchecked")
+	private K keyAt(int index) {
+		return (K) keys[index];
+	}
+	
+	/** Double the table, reusing each key's cached hash */
+	private void rehash() {
+		if (capacity == MAXIMUM_CAPACITY) {
+			throw new RuntimeException("Exceeding maximum capacity");
+		}
+		
+		Object[] oldKeys = keys;
+		int[] oldHashes = hashes;
+		long[] oldCounts = counts;
+		
+		capacity <<= 1;	// Same as capacity *= 2. <= is more efficient
+		keys = new Object[capacity];
+		hashes = new int[capacity];
+		counts = new long[capacity];
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int index = oldHashes[i] & (capacity - 1);
+				while (keys[index] != null) {
+					index = (index + 1) & (capacity - 1);
+				}
+				keys[index] = oldKeys[i];
+				hashes[index] = oldHashes[i];
+				counts[index] = oldCounts[i];
+			}
+		}
+	}
+	
+	@Override
+	/** Return a string representation for this map */
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		
+		forEach((key, count) -> builder.append("[" + key + ", " + count + "]"));
+		
+		builder.append("]");
+		return builder.toString();
+	}
+	
+	/** A counter map for many threads counting at once.  Like LongAdder, it
+	 * keeps several cells and each thread adds to the cell picked by its
+	 * thread id, so threads rarely wait on the same lock.  Reads add up the
+	 * key's count from every cell. */
+	public static class Striped<K> {
+		// Cells that threads count into.  Each is guarded by its own lock
+		private CoryCaddellCounterMap<K>[] cells;
+		
+		/** Construct a striped counter with two cells per processor */
+		public Striped() {
+			this(Runtime.getRuntime().availableProcessors() * 2);
+		}
+		
+		/** Construct a striped counter with the specified number of cells,
+		 * rounded up to a power of 2 */
+		public Striped(int cellCount) {
+			int count = 1;
+			while (count < cellCount) {
+				count <<= 1;
+			}
+			
+			cells = new CoryCaddellCounterMap[count];
+			for (int i = 0; i < count; i++) {
+				cells[i] = new CoryCaddellCounterMap<>();
+			}
+		}
+		
+		/** Add one to the count for key */
+		public void increment(K key) {
+			add(key, 1);
+		}
+		
+		/** Add delta to the count for key */
+		public void add(K key, long delta) {
+			CoryCaddellCounterMap<K> cell = cellForThread();
+			synchronized (cell) {
+				cell.add(key, delta);
+			}
+		}
+		
+		/** Return the count for key summed over every cell */
+		public long getCount(K key) {
+			long count = 0;
+			for (CoryCaddellCounterMap<K> cell: cells) {
+				synchronized (cell) {
+					count += cell.getCount(key);
+				}
+			}
+			return count;
+		}
+		
+		/** Return the k keys with the highest counts, highest first */
+		public List<CoryCaddellMap.Entry<K, Long>> topK(int k) {
+			return sum().topK(k);
+		}
+		
+		/** Return a single-threaded counter map holding the total for every key */
+		public CoryCaddellCounterMap<K> sum() {
+			CoryCaddellCounterMap<K> total = new CoryCaddellCounterMap<>();
+			for (CoryCaddellCounterMap<K> cell: cells) {
+				synchronized (cell) {
+					cell.forEach(total::add);
+				}
+			}
+			return total;
+		}
+		
+		/** Return the cell the current thread counts into */
+		private CoryCaddellCounterMap<K> cellForThread() {
+			int h = CoryCaddellHashMap.supplementalHash((int) Thread.currentThread().getId());
+			return cells[h & (cells.length - 1)];
+		}
+	}
+}
@@ -0,0 +1,76 @@
+// CoryCaddellDurableBenchmark.java
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class CoryCaddellDurableBenchmark {
+	
+	// Number of puts measured per configuration
+	private static final int OPERATIONS = 20_000;
+	
+	// Number of untimed puts so the JIT has compiled the write path first
+	private static final int WARMUP_OPERATIONS = 2_000;
+	
+	// Log records between checkpoints; high enough that none is written
+	private static final int CHECKPOINT_INTERVAL = 1_000_000;
+	
+	/** Print the time per put() and puts per second for a
+	 * CoryCaddellDurableHashMap with commit batches of 1 and 64 records,
+	 * each with fsync on and off.  The maps are written under the directory
+	 * given as the first argument, or the system temp directory.  Use a
+	 * directory on the disk being measured, since fsync cost depends on it */
+	public static void main(String[] args) throws IOException {
+		Path root = Files.createTempDirectory(
+				args.length > 0 ? Paths.get(args[0]) : Paths.get(System.getProperty("java.io.tmpdir")),
+				"durable-benchmark");
+		
+		System.out.printf("%-12s%8s%14s%14s\n", "Batch size", "fsync", "us/put", "Puts/s");
+		System.out.printf("%-12s%8s%14s%14s\n", "----------", "-----", "------", "------");
+		
+		try {
+			for (boolean fsync: new boolean[] {true, false}) {
+				for (int batchSize: new int[] {1, 64}) {
+					Path directory = root.resolve(batchSize + (fsync ? "-fsync" : "-nofsync"));
+					double micros = microsPerPut(directory, batchSize, fsync);
+					System.out.printf("%-12d%8s%14.2f%14.0f\n", batchSize, fsync ? "on" : "off",
+							micros, 1_000_000 / micros);
+				}
+			}
+		}
+		finally {
+			delete(root);
+		}
+	}
+	
+	/** Return the microseconds per put() into a fresh map in directory,
+	 * including the final commit() */
+	private static double microsPerPut(Path directory, int batchSize, boolean fsync)
+			throws IOException {
+		try (CoryCaddellDurableHashMap<Integer, Long> map = new CoryCaddellDurableHashMap<>(directory,
+				CoryCaddellDurableHashMap.Codec.INTEGER, CoryCaddellDurableHashMap.Codec.LONG,
+				batchSize, fsync, CHECKPOINT_INTERVAL)) {
+			for (int i = 0; i < WARMUP_OPERATIONS; i++) {
+				map.put(i, (long) i);
+			}
+			map.commit();
+			
+			long start = System.nanoTime();
+			for (int i = 0; i < OPERATIONS; i++) {
+				map.put(i, (long) i);
+			}
+			map.commit();
+			
+			return (System.nanoTime() - start) / 1000.0 / OPERATIONS;
+		}
+	}
+	
+	/** Delete directory and everything in it */
+	private static void delete(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);	// Files before their directories
+		}
+	}
+}
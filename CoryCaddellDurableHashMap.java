@@ -0,0 +1,439 @@
+// CoryCaddellDurableHashMap.java
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/** A CoryCaddellHashMap whose changes survive a crash.  Every put, remove and
+ * clear is encoded as a write-ahead log record before the call returns, but
+ * records stay in memory until commitBatchSize of them are pending.  Only then
+ * is the group written to the log, and forced to disk when fsync is on.
+ * Nothing writes a partial group on a timer, so a crash loses up to
+ * commitBatchSize - 1 changes made since the last commit() or close().  A
+ * checkpoint of the whole map is written every checkpointInterval records,
+ * after which the log starts over.  Opening the map loads the checkpoint and
+ * replays the log, stopping at the first torn or corrupt record. */
+public class CoryCaddellDurableHashMap<K, V> implements CoryCaddellMap<K, V>, Closeable {
+	
+	// Define default number of records written to the log together
+	private static int DEFAULT_COMMIT_BATCH_SIZE = 64;
+	
+	// Define default number of log records between checkpoints
+	private static int DEFAULT_CHECKPOINT_INTERVAL = 100_000;
+	
+	// Largest log record accepted on replay; anything bigger is corruption
+	private static int MAXIMUM_RECORD_SIZE = 1 << 26;
+	
+	// Log record operations
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final byte CLEAR = 3;
+	
+	// File names inside the map's directory
+	private static final String LOG_FILE = "map.log";
+	private static final String CHECKPOINT_FILE = "map.checkpoint";
+	private static final String CHECKPOINT_TEMP_FILE = "map.checkpoint.tmp";
+	
+	// In-memory contents of the map
+	private CoryCaddellHashMap<K, V> map = new CoryCaddellHashMap<>();
+	
+	// Directory holding the log and checkpoint
+	private Path directory;
+	
+	// Codecs for keys and values
+	private Codec<K> keyCodec;
+	private Codec<V> valueCodec;
+	
+	// Number of records written to the log together
+	private int commitBatchSize;
+	
+	// Force each group of records to disk when true
+	private boolean fsync;
+	
+	// Number of log records between checkpoints
+	private int checkpointInterval;
+	
+	// Log file opened for appending
+	private FileChannel log;
+	
+	// Records not yet written to the log, and how many there are
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private int pendingRecords = 0;
+	
+	// Number of records in the log since the last checkpoint
+	private int logRecords = 0;
+	
+	// Reused buffer for encoding one record
+	private ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+	private DataOutputStream record = new DataOutputStream(recordBytes);
+	
+	/** Encodes keys or values of one type for the log and checkpoint */
+	public interface Codec<T> {
+		/** Write value to out */
+		void write(DataOutput out, T value) throws IOException;
+		
+		/** Read a value written by write() */
+		T read(DataInput in) throws IOException;
+		
+		/** Codec for String keys or values */
+		Codec<String> STRING = new Codec<String>() {
+			public void write(DataOutput out, String value) throws IOException {
+				out.writeUTF(value);
+			}
+			
+			public String read(DataInput in) throws IOException {
+				return in.readUTF();
+			}
+		};
+		
+		/** Codec for Integer keys or values */
+		Codec<Integer> INTEGER = new Codec<Integer>() {
+			public void write(DataOutput out, Integer value) throws IOException {
+				out.writeInt(value);
+			}
+			
+			public Integer read(DataInput in) throws IOException {
+				return in.readInt();
+			}
+		};
+		
+		/** Codec for Long keys or values */
+		Codec<Long> LONG = new Codec<Long>() {
+			public void write(DataOutput out, Long value) throws IOException {
+				out.writeLong(value);
+			}
+			
+			public Long read(DataInput in) throws IOException {
+				return in.readLong();
+			}
+		};
+	}
+	
+	/** Open the map stored in directory with the default batching, fsync on
+	 * and the default checkpoint interval */
+	public CoryCaddellDurableHashMap(Path directory, Codec<K> keyCodec, Codec<V> valueCodec)
+			throws IOException {
+		this(directory, keyCodec, valueCodec, DEFAULT_COMMIT_BATCH_SIZE, true,
+				DEFAULT_CHECKPOINT_INTERVAL);
+	}
+	
+	/** Open the map stored in directory, creating it if needed.  With a
+	 * commitBatchSize of 1 every change is on disk when its call returns;
+	 * larger batches trade the last few changes for throughput */
+	public CoryCaddellDurableHashMap(Path directory, Codec<K> keyCodec, Codec<V> valueCodec,
+			int commitBatchSize, boolean fsync, int checkpointInterval) throws IOException {
+		if (commitBatchSize < 1 || checkpointInterval < 1) {
+			throw new IllegalArgumentException("Batch size and checkpoint interval must be positive");
+		}
+		
+		this.directory = directory;
+		this.keyCodec = keyCodec;
+		this.valueCodec = valueCodec;
+		this.commitBatchSize = commitBatchSize;
+		this.fsync = fsync;
+		this.checkpointInterval = checkpointInterval;
+		
+		Files.createDirectories(directory);
+		Files.deleteIfExists(directory.resolve(CHECKPOINT_TEMP_FILE));	// Unfinished checkpoint
+		
+		readCheckpoint();
+		long logEnd = replayLog();
+		
+		log = FileChannel.open(directory.resolve(LOG_FILE),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		log.truncate(logEnd);	// Drop a torn record left by a crash
+		log.position(logEnd);
+	}
+	
+	@Override
+	/** Remove all entries from this map */
+	public void clear() {
+		append(CLEAR, null, null);
+		map.clear();
+		checkpointIfDue();
+	}
+	
+	@Override
+	/** Return true if specified key is in map */
+	public boolean containsKey(K key) {
+		return map.containsKey(key);
+	}
+	
+	@Override
+	/** Return true if map contains value */
+	public boolean containsValue(V value) {
+		return map.containsValue(value);
+	}
+	
+	@Override
+	/** Return a set of entries in the map */
+	public Set<CoryCaddellMap.Entry<K, V>> entrySet() {
+		return map.entrySet();
+	}
+	
+	@Override
+	/** Return the value that matches the specified key */
+	public V get(K key) {
+		return map.get(key);
+	}
+	
+	@Override
+	/** Return true if this map contains no entries */
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+	
+	@Override
+	/** Return a set consisting of keys in this map */
+	public Set<K> keySet() {
+		return map.keySet();
+	}
+	
+	@Override
+	/** Add an entry (key, value) into the map */
+	public V put(K key, V value) {
+		append(PUT, key, value);
+		V result = map.put(key, value);
+		checkpointIfDue();
+		
+		return result;
+	}
+	
+	@Override
+	/** Remove the entry for the specified key */
+	public void remove(K key) {
+		if (map.containsKey(key)) {	// Don't log removes that change nothing
+			append(REMOVE, key, null);
+			map.remove(key);
+			checkpointIfDue();
+		}
+	}
+	
+	@Override
+	/** Return the number of entries in this map */
+	public int size() {
+		return map.size();
+	}
+	
+	@Override
+	/** Return a set consisting of value in this map */
+	public Set<V> values() {
+		return map.values();
+	}
+	
+	/** Write every pending record to the log, forcing it to disk if fsync is on */
+	public void commit() throws IOException {
+		if (pendingRecords == 0) {
+			return;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+		while (buffer.hasRemaining()) {
+			log.write(buffer);
+		}
+		if (fsync) {
+			log.force(false);
+		}
+		
+		pending.reset();
+		pendingRecords = 0;
+	}
+	
+	/** Write the whole map to a new checkpoint and start the log over */
+	public void checkpoint() throws IOException {
+		Path temp = directory.resolve(CHECKPOINT_TEMP_FILE);
+		
+		try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+			CRC32 crc = new CRC32();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			
+			out.writeInt(map.size());
+			for (CoryCaddellMap.Entry<K, V> entry: map.entrySet()) {
+				keyCodec.write(out, entry.getKey());
+				valueCodec.write(out, entry.getValue());
+			}
+			out.flush();
+			crc.update(bytes.toByteArray());
+			out.writeLong(crc.getValue());	// Trailer checks the whole checkpoint
+			
+			bytes.writeTo(file);
+			file.getFD().sync();
+		}
+		
+		// The rename makes the checkpoint visible all at once
+		Files.move(temp, directory.resolve(CHECKPOINT_FILE),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		
+		// The rename lives in the directory, so force that too.  Otherwise a
+		// crash could bring back the old checkpoint after the log is emptied
+		try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+			dir.force(true);
+		}
+		
+		// Everything in the log is now in the checkpoint
+		pending.reset();
+		pendingRecords = 0;
+		log.truncate(0);
+		log.position(0);
+		if (fsync) {
+			log.force(true);
+		}
+		logRecords = 0;
+	}
+	
+	@Override
+	/** Commit pending records and close the log */
+	public void close() throws IOException {
+		commit();
+		log.close();
+	}
+	
+	/** Encode one record, add it to the pending group and commit if the group is full */
+	private void append(byte operation, K key, V value) {
+		try {
+			recordBytes.reset();
+			record.writeByte(operation);
+			if (operation != CLEAR) {
+				keyCodec.write(record, key);
+			}
+			if (operation == PUT) {
+				valueCodec.write(record, value);
+			}
+			record.flush();
+			
+			byte[] payload = recordBytes.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			
+			// Each record is [length][crc][payload]
+			DataOutputStream out = new DataOutputStream(pending);
+			out.writeInt(payload.length);
+			out.writeInt((int) crc.getValue());
+			out.write(payload);
+			pendingRecords++;
+			logRecords++;
+			
+			if (pendingRecords >= commitBatchSize) {
+				commit();
+			}
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	
+	/** Checkpoint once the log holds checkpointInterval records.  Called
+	 * after the change has been applied to the map */
+	private void checkpointIfDue() {
+		if (logRecords < checkpointInterval) {
+			return;
+		}
+		
+		try {
+			commit();	// The log stays valid if the checkpoint fails part way
+			checkpoint();
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	
+	/** Load the checkpoint into the map, if there is one */
+	private void readCheckpoint() throws IOException {
+		Path path = directory.resolve(CHECKPOINT_FILE);
+		if (!Files.exists(path)) {
+			return;
+		}
+		
+		byte[] bytes = Files.readAllBytes(path);
+		if (bytes.length < Long.BYTES) {
+			throw new IOException("Checkpoint is truncated: " + path);
+		}
+		
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - Long.BYTES);
+		if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - Long.BYTES, Long.BYTES).getLong()) {
+			throw new IOException("Checkpoint is corrupt: " + path);
+		}
+		
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		int count = in.readInt();
+		map = new CoryCaddellHashMap<>((int) (count / 0.75f) + 1);	// Presize to avoid rehashing
+		for (int i = 0; i < count; i++) {
+			K key = keyCodec.read(in);
+			map.put(key, valueCodec.read(in));
+		}
+	}
+	
+	/** Apply every complete record in the log to the map.  Return the offset
+	 * just past the last good record */
+	private long replayLog() throws IOException {
+		Path path = directory.resolve(LOG_FILE);
+		if (!Files.exists(path)) {
+			return 0;
+		}
+		
+		long goodEnd = 0;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(path)))) {
+			while (true) {
+				int length;
+				int checksum;
+				byte[] payload;
+				try {
+					length = in.readInt();
+					checksum = in.readInt();
+					if (length < 1 || length > MAXIMUM_RECORD_SIZE) {
+						break;	// Garbage length, so the tail is torn
+					}
+					payload = new byte[length];
+					in.readFully(payload);
+				}
+				catch (EOFException ex) {
+					break;	// Partial record at the end of the log
+				}
+				
+				CRC32 crc = new CRC32();
+				crc.update(payload);
+				if ((int) crc.getValue() != checksum) {
+					break;
+				}
+				
+				applyRecord(new DataInputStream(new ByteArrayInputStream(payload)));
+				goodEnd += 2 * Integer.BYTES + length;
+				logRecords++;
+			}
+		}
+		
+		return goodEnd;
+	}
+	
+	/** Apply one decoded log record to the map */
+	private void applyRecord(DataInputStream in) throws IOException {
+		byte operation = in.readByte();
+		
+		if (operation == PUT) {
+			K key = keyCodec.read(in);
+			map.put(key, valueCodec.read(in));
+		}
+		else if (operation == REMOVE) {
+			map.remove(keyCodec.read(in));
+		}
+		else if (operation == CLEAR) {
+			map.clear();
+		}
+		else {
+			throw new IOException("Unknown log operation: " + operation);
+		}
+	}
+	
+	@Override
+	/** Return a string representation for this map */
+	public String toString() {
+		return map.toString();
+	}
+}
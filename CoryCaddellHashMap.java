@@ -1,6 +1,10 @@
 // CoryCaddellHashMap.java
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 	
@@ -25,6 +29,21 @@ public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 	// Has table is an array with each cell being a linked list
 	LinkedList<CoryCaddellMap.Entry<K,V>>[] table;
 	
+	// Optional reverse index from each value to the keys mapped to it.  A
+	// value with one key maps straight to that key; a value with more maps
+	// to a KeySet.  null unless the map was constructed with indexValues set
+	private CoryCaddellHashMap<V, Object> valueIndex;
+	
+	// True while a snapshot still references this map's bucket array
+	private boolean shared = false;
+	
+	// Buckets copied since the last snapshot and safe to change in place.
+	// null until the first snapshot, meaning every bucket is owned
+	private boolean[] owned;
+	
+	// True for snapshots, which reject every change
+	private boolean readOnly = false;
+	
 	/** Construct a map default capacity and load factor */
 	public CoryCaddellHashMap() {
 		this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_LOAD_FACTOR);
@@ -37,6 +56,19 @@ public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 	
 	/** Construct a map with specified initial capacity and load factor */
 	public CoryCaddellHashMap(int initialCapacity, float loadFactorThreshold) {
+		this(initialCapacity, loadFactorThreshold, false);
+	}
+	
+	/** Construct a map with specified initial capacity and load factor.
+	 * When indexValues is true the map also keeps a value-to-keys index so
+	 * containsValue() and keysForValue() run in O(1) expected time instead
+	 * of scanning every bucket.  A value held by one key maps straight to it,
+	 * so the index costs about as much as the map itself: around 95 extra
+	 * bytes per entry on a 64-bit JVM, next to 80 without it.  Values shared
+	 * by several keys also get a set of those keys, 65 to 135 extra bytes per
+	 * entry depending on the sharing.  CoryCaddellValueIndexBenchmark prints
+	 * the figures for the current JVM */
+	public CoryCaddellHashMap(int initialCapacity, float loadFactorThreshold, boolean indexValues) {
 		if (initialCapacity > MAXIMUM_CAPACITY) {
 			this.capacity = MAXIMUM_CAPACITY;
 		}
@@ -46,13 +78,40 @@ public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 		
 		this.loadFactorThreshold = loadFactorThreshold;
 		table = new LinkedList[capacity];
+		
+		if (indexValues) {
+			valueIndex = new CoryCaddellHashMap<>();
+		}
+	}
+	
+	/** Construct a read-only snapshot that shares source's buckets */
+	private CoryCaddellHashMap(CoryCaddellHashMap<K, V> source) {
+		this.capacity = source.capacity;
+		this.loadFactorThreshold = source.loadFactorThreshold;
+		this.size = source.size;
+		this.table = source.table;
+		this.readOnly = true;
 	}
 	
 	@Override
 	/** Remove all entries from this map */
 	public void clear() {
+		checkWritable();
 		size = 0;
-		removeEntries();
+		
+		if (shared || owned != null) {
+			// Buckets may belong to a snapshot, so start over with a new table
+			table = new LinkedList[capacity];
+			shared = false;
+			owned = null;
+		}
+		else {
+			removeEntries();
+		}
+		
+		if (valueIndex != null) {
+			valueIndex.clear();
+		}
 	}
 	
 	@Override
@@ -69,6 +128,10 @@ public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 	@Override
 	/** Return true if map contains value */
 	public boolean containsValue(V value) {
+		if (valueIndex != null && value != null) {
+			return valueIndex.get(value) != null;
+		}
+		
 		for (int i = 0; i < capacity; i++) {
 			if (table[i] != null) {
 				LinkedList<Entry<K,V>> bucket = table[i];
@@ -99,20 +162,124 @@ public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 		return set;
 	}
 	
+	/** Perform action on every entry without copying them into a set */
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		for (int i = 0; i < capacity; i++) {
+			if (table[i] != null) {
+				for (Entry<K, V> entry: table[i]) {
+					action.accept(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+	
 	@Override
 	/** Return the value that matches the specified key */
 	public V get(K key) {
-		int bucketIndex = hash(key.hashCode());
-		if (table[bucketIndex] != null) {
-			LinkedList<Entry<K, V>> bucket = table[bucketIndex];
-			for (Entry<K, V> entry: bucket) {
-				if (entry.getKey().equals(key)) {
-					return entry.getValue();
+		return get(key, supplementalHash(key.hashCode()));
+	}
+	
+	/** Return the value for key, whose spread hash h the caller has already
+	 * computed.  Lets CoryCaddellPartitionedHashMap hash each key only once */
+	V get(K key, int h) {
+		return getFromBucket(indexFor(h), h, key);
+	}
+	
+	/** Look up every key in keys and return a map of the keys that were found */
+	public Map<K, V> getAll(Collection<K> keys) {
+		Map<K, V> result = new HashMap<>();
+		
+		// Walk the collection itself, since toArray() isn't reliable for every
+		// collection; CoryCaddellHashSet's returns null when it is empty
+		for (K key: keys) {
+			V value = get(key);
+			if (value != null) {
+				result.put(key, value);
+			}
+		}
+		
+		return result;
+	}
+	
+	/** Look up keys[i] into out[i] for every key, storing null for keys not in
+	 * the map.  Return the number of keys found.  Keys are probed in the
+	 * order given; sorting them by bucket index first measured slower for
+	 * batches of 50 to 500 keys */
+	public int getAll(K[] keys, V[] out) {
+		if (out.length < keys.length) {
+			throw new IllegalArgumentException("Output array is shorter than key array");
+		}
+		
+		int found = 0;
+		for (int i = 0; i < keys.length; i++) {
+			out[i] = get(keys[i]);
+			if (out[i] != null) {
+				found++;
+			}
+		}
+		
+		return found;
+	}
+	
+	/** Look up keys and load the missing ones with loader on executor.  Keys
+	 * already in the map are resolved on the calling thread before this method
+	 * returns, so the map is never read from the executor.  Loaded values are
+	 * returned in the result but not stored; callers that want them cached
+	 * should put them from the thread that owns the map */
+	public CompletableFuture<Map<K, V>> getAllAsync(Collection<K> keys,
+			Function<? super K, ? extends V> loader, Executor executor) {
+		Map<K, V> hits = getAll(keys);
+		List<K> misses = new ArrayList<>();
+		
+		for (K key: keys) {
+			if (!hits.containsKey(key)) {
+				misses.add(key);
+			}
+		}
+		
+		if (misses.isEmpty()) {
+			return CompletableFuture.completedFuture(hits);
+		}
+		
+		return CompletableFuture.supplyAsync(() -> {
+			for (K key: misses) {
+				V value = loader.apply(key);
+				if (value != null) {
+					hits.put(key, value);
 				}
 			}
+			return hits;
+		}, executor);
+	}
+	
+	/** Return the keys that are mapped to the specified value */
+	@SuppressWarnings("unchecked")
+	public Set<K> keysForValue(V value) {
+		Set<K> set = new HashSet<>();
+		
+		if (valueIndex != null && value != null) {
+			Object keys = valueIndex.get(value);
+			if (keys instanceof KeySet) {
+				set.addAll((KeySet<K>) keys);
+			}
+			else if (keys != null) {
+				set.add((K) keys);	// Only one key has this value
+			}
+			return set;
 		}
 		
-		return null;
+		// No index, so fall back to scanning every bucket
+		for (int i = 0; i < capacity; i++) {
+			if (table[i] != null) {
+				for (Entry<K, V> entry: table[i]) {
+					if (Objects.equals(entry.getValue(), value)) {
+						set.add(entry.getKey());
+					}
+				}
+			}
+		}
+		
+		return set;
 	}
 	
 	@Override
@@ -140,15 +307,26 @@ public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 	@Override
 	/** Add an entry (key, value) into the map */
 	public V put(K key, V value) {
-		int bucketIndex = hash(key.hashCode());
+		return put(key, value, supplementalHash(key.hashCode()));
+	}
+	
+	/** Add an entry (key, value) whose spread hash h the caller has already computed */
+	V put(K key, V value, int h) {
+		checkWritable();
 		
-		if (get(key) != null) {
-			LinkedList<Entry<K, V>> bucket = table[bucketIndex];
+		// Look for the key in its bucket, copied first if a snapshot shares it
+		LinkedList<Entry<K, V>> bucket = writableBucket(indexFor(h));
+		if (bucket != null) {
 			for (Entry<K, V> entry: bucket) {
-				if (entry.getKey().equals(key)) {
+				if (entry.hash == h && entry.getKey().equals(key)) {	// Cheap hash check first
 					V oldValue = entry.getValue();
 					entry.value = value;
 					
+					if (!Objects.equals(oldValue, value)) {	// Same value needs no index change
+						unindexValue(key, oldValue);
+						indexValue(key, value);
+					}
+					
 					return oldValue;
 				}
 			}
@@ -162,15 +340,8 @@ public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 			rehash();
 		}
 		
-		// Create a linked list for the bucket if not alredy created
-		if (table[bucketIndex] == null) {
-			table[bucketIndex] = new LinkedList<Entry<K, V>>();
-		}
-		
-		// Add a new entry (key, value) to hashTable[index]
-		table[bucketIndex].add(new CoryCaddellMap.Entry<K, V>(key, value));
-		
-		size++;
+		addEntry(h, key, value);
+		indexValue(key, value);
 		
 		return value;
 	}
@@ -178,15 +349,22 @@ public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 	@Override
 	/** Remove the entries for the specified key */
 	public void remove(K key) {
-		int bucketIndex = hash(key.hashCode());
+		remove(key, supplementalHash(key.hashCode()));
+	}
+	
+	/** Remove the entry for key, whose spread hash h the caller has already computed */
+	void remove(K key, int h) {
+		checkWritable();
+		int bucketIndex = indexFor(h);
 		
 		// Remove first entry that matches the key from a bucket
 		if (table[bucketIndex] != null) {
-			LinkedList<Entry<K, V>> bucket = table[bucketIndex];
+			LinkedList<Entry<K, V>> bucket = writableBucket(bucketIndex);
 			for (Entry<K, V> entry: bucket) {
-				if(entry.getKey().equals(key)) {
+				if(entry.hash == h && entry.getKey().equals(key)) {
 				bucket.remove(entry);
 				size--;	// Decrease size
+				unindexValue(key, entry.getValue());
 				break;	// Remove just one entry that matches the key
 				}
 			}
@@ -199,6 +377,22 @@ public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 		return size;
 	}
 	
+	/** Return a read-only view of the map as it is now.  Taking a snapshot is
+	 * O(1): the snapshot shares this map's buckets, and later changes to this
+	 * map copy the bucket array once and then only the buckets they touch, so
+	 * the snapshot never sees them.  Snapshots never change, so they can be
+	 * read from other threads without locking once safely published (through
+	 * a volatile field or a concurrent queue, for example).  A snapshot does
+	 * not carry the value index; its containsValue() scans the buckets */
+	public CoryCaddellHashMap<K, V> snapshot() {
+		if (readOnly) {
+			return this;	// Already immutable
+		}
+		
+		shared = true;
+		return new CoryCaddellHashMap<>(this);
+	}
+	
 	@Override
 	/** Return a set consisting of value in this map */
 	public Set<V> values() {
@@ -216,13 +410,124 @@ public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 		return set;
 	}
 	
-	/** Hash function */
-	private int hash(int hashCode) {
-		return supplementalHash(hashCode) & (capacity -1);
+	/** Add a new entry (key, value) to its bucket.  The key must not already be in the map */
+	private void addEntry(int h, K key, V value) {
+		// Bucket index is computed here so it reflects the current capacity
+		int bucketIndex = indexFor(h);
+		
+		writableBucket(bucketIndex);
+		
+		// Create a linked list for the bucket if not alredy created
+		if (table[bucketIndex] == null) {
+			table[bucketIndex] = new LinkedList<Entry<K, V>>();
+		}
+		
+		// Add a new entry (key, value) to hashTable[index]
+		table[bucketIndex].add(new CoryCaddellMap.Entry<K, V>(h, key, value));
+		
+		size++;
+	}
+	
+	/** Throw if this map is a read-only snapshot */
+	private void checkWritable() {
+		if (readOnly) {
+			throw new UnsupportedOperationException("Snapshot is read-only");
+		}
+	}
+	
+	/** Return the bucket at bucketIndex, first copying it if a snapshot may
+	 * still reference it.  Entries are copied too since put() changes them */
+	private LinkedList<Entry<K, V>> writableBucket(int bucketIndex) {
+		if (shared) {
+			table = table.clone();	// Copy the bucket references only
+			owned = new boolean[capacity];
+			shared = false;
+		}
+		
+		if (owned != null && !owned[bucketIndex]) {
+			if (table[bucketIndex] != null) {
+				LinkedList<Entry<K, V>> copy = new LinkedList<>();
+				for (Entry<K, V> entry: table[bucketIndex]) {
+					copy.add(new CoryCaddellMap.Entry<K, V>(entry.hash, entry.getKey(), entry.getValue()));
+				}
+				table[bucketIndex] = copy;
+			}
+			owned[bucketIndex] = true;
+		}
+		
+		return table[bucketIndex];
+	}
+	
+	/** Return the value for key in the specified bucket, or null if absent */
+	private V getFromBucket(int bucketIndex, int h, K key) {
+		if (table[bucketIndex] != null) {
+			LinkedList<Entry<K, V>> bucket = table[bucketIndex];
+			for (Entry<K, V> entry: bucket) {
+				if (entry.hash == h && entry.getKey().equals(key)) {
+					return entry.getValue();
+				}
+			}
+		}
+		
+		return null;
 	}
 	
-	/** Ensure the hashing is evenly distributed */
-	private static int supplementalHash(int h) {
+	/** Record key under value in the value index, if enabled */
+	@SuppressWarnings("unchecked")
+	private void indexValue(K key, V value) {
+		if (valueIndex == null || value == null) {
+			return;
+		}
+		
+		Object keys = valueIndex.get(value);
+		if (keys == null) {
+			valueIndex.put(value, key);	// First key is stored on its own
+		}
+		else if (keys instanceof KeySet) {
+			((KeySet<K>) keys).add(key);
+		}
+		else {
+			// Second key for this value, so promote to a set
+			KeySet<K> set = new KeySet<>();
+			set.add((K) keys);
+			set.add(key);
+			valueIndex.put(value, set);
+		}
+	}
+	
+	/** Drop key from value's entry in the value index, if enabled */
+	@SuppressWarnings("unchecked")
+	private void unindexValue(K key, V value) {
+		if (valueIndex == null || value == null) {
+			return;
+		}
+		
+		Object keys = valueIndex.get(value);
+		if (keys instanceof KeySet) {
+			KeySet<K> set = (KeySet<K>) keys;
+			set.remove(key);
+			if (set.size() == 1) {
+				valueIndex.put(value, set.iterator().next());	// Back to a single key
+			}
+		}
+		else if (keys != null && keys.equals(key)) {
+			valueIndex.remove(value);
+		}
+	}
+	
+	/** Set of the keys sharing one value in the value index.  A private type,
+	 * so it can't be mistaken for a key that happens to be a set */
+	private static class KeySet<K> extends CoryCaddellHashSet<K> {
+	}
+	
+	/** Return the bucket index for a spread hash */
+	private int indexFor(int h) {
+		return h & (capacity -1);
+	}
+	
+	/** Ensure the hashing is evenly distributed.  Shared with the other map
+	 * implementations in this package so they spread hashes the same way */
+	static int supplementalHash(int h) {
 		h ^= (h >>> 20) ^ (h >>> 12);
 		return h ^ (h >>> 7) ^ (h >>> 4);
 	}
@@ -246,16 +551,55 @@ public class CoryCaddellHashMap<K, V> implements CoryCaddellMap<K, V> {
 		}
 	}
 	
-	/** Rehash the map */
+	/** Rehash the map.  Doubling the capacity adds one bit to the bucket
+	 * index, so each bucket splits into a lo half that stays at i and a hi
+	 * half that moves to i + oldCapacity, decided by that bit of the cached
+	 * hash.  No hashCode() or equals() is called and entries are reused */
 	private void rehash() {
-		Set<Entry<K, V>> set = entrySet();
+		LinkedList<Entry<K, V>>[] oldTable = table;
+		int oldCapacity = capacity;
 		capacity <<= 1;	// Same as capacity *= 2. <= is more efficient
 		
 		table = new LinkedList[capacity];	// Create a new has table
-		size = 0; // Reset size to 0
 		
-		for (Entry<K, V> entry: set) {
-			put(entry.getKey(), entry.getValue());	// Store to new table
+		for (int i = 0; i < oldCapacity; i++) {
+			if (oldTable[i] != null) {
+				LinkedList<Entry<K, V>> lo = null;
+				LinkedList<Entry<K, V>> hi = null;
+				
+				for (Entry<K, V> entry: oldTable[i]) {
+					if ((entry.hash & oldCapacity) == 0) {
+						if (lo == null) {
+							lo = new LinkedList<>();
+						}
+						lo.add(entry);
+					}
+					else {
+						if (hi == null) {
+							hi = new LinkedList<>();
+						}
+						hi.add(entry);
+					}
+				}
+				
+				table[i] = lo;
+				table[i + oldCapacity] = hi;
+			}
+		}
+		
+		// The lists are new but the entries are reused, so a bucket is only
+		// owned if the entries came from an owned bucket
+		if (shared) {
+			owned = new boolean[capacity];
+			shared = false;
+		}
+		else if (owned != null) {
+			boolean[] oldOwned = owned;
+			owned = new boolean[capacity];
+			for (int i = 0; i < oldCapacity; i++) {
+				owned[i] = oldOwned[i];
+				owned[i + oldCapacity] = oldOwned[i];
+			}
 		}
 	}
 	
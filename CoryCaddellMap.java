@@ -42,7 +42,16 @@ public interface CoryCaddellMap<K,V> {
 		K key;
 		V value;
 		
+		// Spread hash of key, cached so maps don't call hashCode() again
+		int hash;
+		
 		public Entry(K key, V value) {
+			this(key == null ? 0 : CoryCaddellHashMap.supplementalHash(key.hashCode()), key, value);
+		}
+		
+		/** Create an entry whose key has the specified spread hash */
+		Entry(int hash, K key, V value) {
+			this.hash = hash;
 			this.key = key;
 			this.value = value;
 		}
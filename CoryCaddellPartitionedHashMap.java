@@ -0,0 +1,206 @@
+// CoryCaddellPartitionedHashMap.java
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+
+/** One logical map spread across several independent CoryCaddellHashMap
+ * shards.  Each key is routed to a shard by the high bits of its mixed hash,
+ * while each shard indexes its own table by the low bits, so the two choices
+ * don't interfere.  Shards resize on their own, which keeps every rehash and
+ * every table allocation a fraction of the whole map, and lets the map grow
+ * past the 2^30 bucket limit of a single table.  Bulk operations can visit
+ * the shards in parallel. */
+public class CoryCaddellPartitionedHashMap<K, V> implements CoryCaddellMap<K, V> {
+	
+	// Define default number of shards.  Must be a power of 2
+	private static int DEFAULT_SHARD_COUNT = 16;
+	
+	// Define default initial capacity of each shard
+	private static int DEFAULT_SHARD_CAPACITY = 4;
+	
+	// Define default load factor
+	private static float DEFAULT_MAX_LOAD_FACTOR = 0.75f;
+	
+	// Define maximum number of shards. 1 << 16 is the same as 2 ^ 16
+	private static int MAXIMUM_SHARD_COUNT = 1 << 16;
+	
+	// Multiplier used to mix hashes before taking the high bits (2^32 / golden ratio)
+	private static final int MIX = 0x9E3779B9;
+	
+	// Independent tables making up the map
+	private CoryCaddellHashMap<K, V>[] shards;
+	
+	// Shift that leaves only the shard-selecting high bits of a hash
+	private int shardShift;
+	
+	/** Construct a map with the default shard count, capacity and load factor */
+	public CoryCaddellPartitionedHashMap() {
+		this(DEFAULT_SHARD_COUNT, DEFAULT_SHARD_CAPACITY, DEFAULT_MAX_LOAD_FACTOR);
+	}
+	
+	/** Construct a map with the specified shard count and default shard
+	 * capacity and load factor */
+	public CoryCaddellPartitionedHashMap(int shardCount) {
+		this(shardCount, DEFAULT_SHARD_CAPACITY, DEFAULT_MAX_LOAD_FACTOR);
+	}
+	
+	/** Construct a map with the specified shard count, initial capacity of
+	 * each shard and load factor.  The shard count is rounded up to a power of 2 */
+	public CoryCaddellPartitionedHashMap(int shardCount, int shardCapacity, float loadFactorThreshold) {
+		int count = 1;
+		while (count < Math.min(shardCount, MAXIMUM_SHARD_COUNT)) {
+			count <<= 1;
+		}
+		
+		shardShift = 32 - Integer.numberOfTrailingZeros(count);
+		shards = new CoryCaddellHashMap[count];
+		for (int i = 0; i < count; i++) {
+			shards[i] = new CoryCaddellHashMap<>(shardCapacity, loadFactorThreshold);
+		}
+	}
+	
+	@Override
+	/** Remove all entries from this map */
+	public void clear() {
+		for (CoryCaddellHashMap<K, V> shard: shards) {
+			shard.clear();
+		}
+	}
+	
+	@Override
+	/** Return true if specified key is in map */
+	public boolean containsKey(K key) {
+		return get(key) != null;
+	}
+	
+	@Override
+	/** Return true if map contains value */
+	public boolean containsValue(V value) {
+		return Arrays.stream(shards).parallel().anyMatch(shard -> shard.containsValue(value));
+	}
+	
+	@Override
+	/** Return a set of entries in the map */
+	public Set<CoryCaddellMap.Entry<K, V>> entrySet() {
+		Set<CoryCaddellMap.Entry<K, V>> set = new HashSet<>();
+		
+		for (CoryCaddellHashMap<K, V> shard: shards) {
+			set.addAll(shard.entrySet());
+		}
+		
+		return set;
+	}
+	
+	@Override
+	/** Return the value that matches the specified key */
+	public V get(K key) {
+		int h = CoryCaddellHashMap.supplementalHash(key.hashCode());
+		return shardFor(h).get(key, h);
+	}
+	
+	@Override
+	/** Return true if this map contains no entries */
+	public boolean isEmpty() {
+		for (CoryCaddellHashMap<K, V> shard: shards) {
+			if (!shard.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	/** Return a set consisting of keys in this map */
+	public Set<K> keySet() {
+		Set<K> set = new HashSet<>();
+		
+		for (CoryCaddellHashMap<K, V> shard: shards) {
+			set.addAll(shard.keySet());
+		}
+		
+		return set;
+	}
+	
+	@Override
+	/** Add an entry (key, value) into the map */
+	public V put(K key, V value) {
+		int h = CoryCaddellHashMap.supplementalHash(key.hashCode());
+		return shardFor(h).put(key, value, h);
+	}
+	
+	@Override
+	/** Remove the entry for the specified key */
+	public void remove(K key) {
+		int h = CoryCaddellHashMap.supplementalHash(key.hashCode());
+		shardFor(h).remove(key, h);
+	}
+	
+	@Override
+	/** Return the number of entries in this map, or Integer.MAX_VALUE if
+	 * there are more.  Use mappingCount() for the exact number */
+	public int size() {
+		return (int) Math.min(mappingCount(), Integer.MAX_VALUE);
+	}
+	
+	/** Return the number of entries in this map */
+	public long mappingCount() {
+		long count = 0;
+		for (CoryCaddellHashMap<K, V> shard: shards) {
+			count += shard.size();
+		}
+		return count;
+	}
+	
+	@Override
+	/** Return a set consisting of value in this map */
+	public Set<V> values() {
+		Set<V> set = new HashSet<>();
+		
+		for (CoryCaddellHashMap<K, V> shard: shards) {
+			set.addAll(shard.values());
+		}
+		
+		return set;
+	}
+	
+	/** Return the number of shards */
+	public int shardCount() {
+		return shards.length;
+	}
+	
+	/** Perform action on every entry, one shard at a time */
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		for (CoryCaddellHashMap<K, V> shard: shards) {
+			shard.forEach(action);
+		}
+	}
+	
+	/** Perform action on every entry, visiting the shards in parallel on the
+	 * common ForkJoin pool.  Each shard is walked by a single task, though one
+	 * pool thread may run the tasks for several shards.  action may run on
+	 * several threads at once and must be thread-safe.  The map must not be
+	 * changed while this runs */
+	public void forEachParallel(BiConsumer<? super K, ? super V> action) {
+		IntStream.range(0, shards.length).parallel().forEach(i -> shards[i].forEach(action));
+	}
+	
+	/** Return the shard that holds keys with spread hash h.  The shard is
+	 * given h too, so a key's hashCode() is only called once per operation */
+	private CoryCaddellHashMap<K, V> shardFor(int h) {
+		// Multiplying mixes every bit upward, so the high bits are well spread
+		// even for keys like small Integers whose hash codes have none set
+		return shards.length == 1 ? shards[0] : shards[(h * MIX) >>> shardShift];
+	}
+	
+	@Override
+	/** Return a string representation for this map */
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		
+		forEach((key, value) -> builder.append("[" + key + ", " + value + "]"));
+		
+		builder.append("]");
+		return builder.toString();
+	}
+}
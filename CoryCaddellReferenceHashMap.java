@@ -0,0 +1,362 @@
+// CoryCaddellReferenceHashMap.java
+
+import java.lang.ref.*;
+import java.util.*;
+
+/** A hash map for memory-sensitive caches.  With weak keys, an entry goes
+ * away once nothing else refers to its key.  With soft values, the garbage
+ * collector may drop values when memory runs low instead of throwing
+ * OutOfMemoryError.  Collected keys and values are put on a ReferenceQueue,
+ * and every public method first drains that queue and removes just those
+ * entries, so there is never a full scan.  size() is exact as of the last
+ * collection the JVM has finished queueing. */
+public class CoryCaddellReferenceHashMap<K, V> implements CoryCaddellMap<K, V> {
+	
+	// Define default has-table size.  Must be a power of 2
+	private static int DEFAULT_INITIAL_CAPACITY = 4;
+	
+	// Define maximum has-table size. 1 << 30 is the same as 2 ^ 30
+	private static int MAXIMUM_CAPACITY = 1 << 30;
+	
+	// Define default load factor
+	private static float DEFAULT_MAX_LOAD_FACTOR = 0.75f;
+	
+	// Current hash-table capacity.  Capacity is a power of 2
+	private int capacity;
+	
+	// Specify a load factor used in the has table
+	private float loadFactorThreshold;
+	
+	// Number of entries in map
+	private int size = 0;
+	
+	// Hold keys through weak references when true
+	private boolean weakKeys;
+	
+	// Hold values through soft references when true
+	private boolean softValues;
+	
+	// Has table is an array with each cell being a linked list
+	private LinkedList<Node<K, V>>[] table;
+	
+	// Receives the references to keys and values the collector has cleared
+	private ReferenceQueue<Object> queue = new ReferenceQueue<>();
+	
+	/** One entry.  key is a K or a WeakKey and value is a V or a SoftValue,
+	 * depending on the map's modes */
+	private static class Node<K, V> {
+		int hash;
+		Object key;
+		Object value;
+		
+		Node(int hash) {
+			this.hash = hash;
+		}
+	}
+	
+	/** Weak reference to a key that remembers its entry */
+	private static class WeakKey<K> extends WeakReference<K> {
+		Node<K, ?> node;
+		
+		WeakKey(K key, Node<K, ?> node, ReferenceQueue<Object> queue) {
+			super(key, queue);
+			this.node = node;
+		}
+	}
+	
+	/** Soft reference to a value that remembers its entry */
+	private static class SoftValue<V> extends SoftReference<V> {
+		Node<?, V> node;
+		
+		SoftValue(V value, Node<?, V> node, ReferenceQueue<Object> queue) {
+			super(value, queue);
+			this.node = node;
+		}
+	}
+	
+	/** Construct a map with the specified modes and default capacity and load factor */
+	public CoryCaddellReferenceHashMap(boolean weakKeys, boolean softValues) {
+		this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_LOAD_FACTOR, weakKeys, softValues);
+	}
+	
+	/** Construct a map with the specified initial capacity, load factor and
+	 * modes.  With both modes off it behaves like CoryCaddellHashMap */
+	public CoryCaddellReferenceHashMap(int initialCapacity, float loadFactorThreshold,
+			boolean weakKeys, boolean softValues) {
+		if (initialCapacity > MAXIMUM_CAPACITY) {
+			this.capacity = MAXIMUM_CAPACITY;
+		}
+		else {
+			this.capacity = trimToPowerOf2(initialCapacity);
+		}
+		
+		this.loadFactorThreshold = loadFactorThreshold;
+		this.weakKeys = weakKeys;
+		this.softValues = softValues;
+		table = new LinkedList[capacity];
+	}
+	
+	@Override
+	/** Remove all entries from this map */
+	public void clear() {
+		for (int i = 0; i < capacity; i++) {
+			if (table[i] != null) {
+				for (Node<K, V> node: table[i]) {
+					clearReferences(node);
+				}
+				table[i].clear();
+			}
+		}
+		size = 0;
+		
+		// Anything already queued belongs to entries that are gone now
+		while (queue.poll() != null) {
+		}
+	}
+	
+	@Override
+	/** Return true if specified key is in map */
+	public boolean containsKey(K key) {
+		return get(key) != null;
+	}
+	
+	@Override
+	/** Return true if map contains value */
+	public boolean containsValue(V value) {
+		expungeStaleEntries();
+		
+		for (int i = 0; i < capacity; i++) {
+			if (table[i] != null) {
+				for (Node<K, V> node: table[i]) {
+					V current = valueOf(node);
+					if (current != null && current.equals(value)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	/** Return a set of entries in the map.  Entries hold strong references,
+	 * so keys and values in the set can't be collected while it is in use */
+	public Set<CoryCaddellMap.Entry<K, V>> entrySet() {
+		expungeStaleEntries();
+		Set<CoryCaddellMap.Entry<K, V>> set = new HashSet<>();
+		
+		for (int i = 0; i < capacity; i++) {
+			if (table[i] != null) {
+				for (Node<K, V> node: table[i]) {
+					K key = keyOf(node);
+					V value = valueOf(node);
+					if (key != null && value != null) {	// Skip entries cleared but not yet queued
+						set.add(new CoryCaddellMap.Entry<K, V>(node.hash, key, value));
+					}
+				}
+			}
+		}
+		
+		return set;
+	}
+	
+	@Override
+	/** Return the value that matches the specified key */
+	public V get(K key) {
+		expungeStaleEntries();
+		
+		Node<K, V> node = findNode(key, CoryCaddellHashMap.supplementalHash(key.hashCode()));
+		return node != null ? valueOf(node) : null;
+	}
+	
+	@Override
+	/** Return true if this map contains no entries */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+	
+	@Override
+	/** Return a set consisting of keys in this map */
+	public Set<K> keySet() {
+		Set<K> set = new HashSet<>();
+		
+		for (CoryCaddellMap.Entry<K, V> entry: entrySet()) {
+			set.add(entry.getKey());
+		}
+		return set;
+	}
+	
+	@Override
+	/** Add an entry (key, value) into the map */
+	public V put(K key, V value) {
+		expungeStaleEntries();
+		int h = CoryCaddellHashMap.supplementalHash(key.hashCode());
+		
+		Node<K, V> node = findNode(key, h);
+		if (node != null) {
+			V oldValue = valueOf(node);
+			if (node.value instanceof Reference) {
+				((Reference<?>) node.value).clear();	// So it never reaches the queue
+			}
+			node.value = softValues ? new SoftValue<V>(value, node, queue) : value;
+			
+			return oldValue;
+		}
+		
+		// Check load factor
+		if (size >= capacity * loadFactorThreshold) {
+			if (capacity == MAXIMUM_CAPACITY) {
+				throw new RuntimeException("Exceeding maximum capacity");
+			}
+			rehash();
+		}
+		
+		node = new Node<>(h);
+		node.key = weakKeys ? new WeakKey<K>(key, node, queue) : key;
+		node.value = softValues ? new SoftValue<V>(value, node, queue) : value;
+		
+		int bucketIndex = h & (capacity - 1);
+		if (table[bucketIndex] == null) {
+			table[bucketIndex] = new LinkedList<Node<K, V>>();
+		}
+		table[bucketIndex].add(node);
+		
+		size++;
+		
+		return value;
+	}
+	
+	@Override
+	/** Remove the entry for the specified key */
+	public void remove(K key) {
+		expungeStaleEntries();
+		int h = CoryCaddellHashMap.supplementalHash(key.hashCode());
+		
+		Node<K, V> node = findNode(key, h);
+		if (node != null) {
+			table[h & (capacity - 1)].remove(node);
+			clearReferences(node);
+			size--;	// Decrease size
+		}
+	}
+	
+	@Override
+	/** Return the number of entries in this map, after removing every entry
+	 * whose key or value has been collected */
+	public int size() {
+		expungeStaleEntries();
+		return size;
+	}
+	
+	@Override
+	/** Return a set consisting of value in this map */
+	public Set<V> values() {
+		Set<V> set = new HashSet<>();
+		
+		for (CoryCaddellMap.Entry<K, V> entry: entrySet()) {
+			set.add(entry.getValue());
+		}
+		return set;
+	}
+	
+	/** Return the node for key, or null if key is not in the map */
+	private Node<K, V> findNode(K key, int h) {
+		LinkedList<Node<K, V>> bucket = table[h & (capacity - 1)];
+		if (bucket != null) {
+			for (Node<K, V> node: bucket) {
+				if (node.hash == h && key.equals(keyOf(node))) {
+					return node;
+				}
+			}
+		}
+		
+		return null;
+	}
+	
+	/** Remove the entries whose keys or values the collector has queued */
+	private void expungeStaleEntries() {
+		for (Reference<?> ref = queue.poll(); ref != null; ref = queue.poll()) {
+			Node<?, ?> node;
+			if (ref instanceof WeakKey) {
+				node = ((WeakKey<?>) ref).node;
+			}
+			else {
+				node = ((SoftValue<?>) ref).node;
+				if (node.value != ref) {
+					continue;	// The value was replaced before it was collected
+				}
+			}
+			
+			// The node may already be gone if both its key and value were queued
+			LinkedList<Node<K, V>> bucket = table[node.hash & (capacity - 1)];
+			if (bucket != null && bucket.remove(node)) {
+				size--;
+			}
+		}
+	}
+	
+	/** Clear the node's references so they are never queued */
+	private void clearReferences(Node<K, V> node) {
+		if (node.key instanceof Reference) {
+			((Reference<?>) node.key).clear();
+		}
+		if (node.value instanceof Reference) {
+			((Reference<?>) node.value).clear();
+		}
+	}
+	
+	/** Return the node's key, or null if it has been collected */
+	@SuppressWarnings("unchecked")
+	private K keyOf(Node<K, V> node) {
+		return weakKeys ? ((WeakKey<K>) node.key).get() : (K) node.key;
+	}
+	
+	/** Return the node's value, or null if it has been collected */
+	@SuppressWarnings("unchecked")
+	private V valueOf(Node<K, V> node) {
+		return softValues ? ((SoftValue<V>) node.value).get() : (V) node.value;
+	}
+	
+	/** Return a power of 2 for initialCapacity */
+	private int trimToPowerOf2( int initialCapacity ) {
+		int capacity = 1;
+		while (capacity < initialCapacity) {
+			capacity <<=1;	// Same as capacity *= 2. <= is more efficient
+		}
+		
+		return capacity;
+	}
+	
+	/** Rehash the map, moving nodes by their cached hash */
+	private void rehash() {
+		LinkedList<Node<K, V>>[] oldTable = table;
+		capacity <<= 1;	// Same as capacity *= 2. <= is more efficient
+		
+		table = new LinkedList[capacity];	// Create a new has table
+		
+		for (LinkedList<Node<K, V>> bucket: oldTable) {
+			if (bucket != null) {
+				for (Node<K, V> node: bucket) {
+					int bucketIndex = node.hash & (capacity - 1);
+					if (table[bucketIndex] == null) {
+						table[bucketIndex] = new LinkedList<Node<K, V>>();
+					}
+					table[bucketIndex].add(node);
+				}
+			}
+		}
+	}
+	
+	@Override
+	/** Return a string representation for this map */
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		
+		for (CoryCaddellMap.Entry<K, V> entry: entrySet()) {
+			builder.append(entry);
+		}
+		
+		builder.append("]");
+		return builder.toString();
+	}
+}
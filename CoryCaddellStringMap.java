@@ -0,0 +1,444 @@
+// CoryCaddellStringMap.java
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/** A map specialized for short Latin-1 string keys.  Key bytes are packed
+ * into one shared byte arena and each slot holds only an offset, a length
+ * and the cached hash, so no String, Entry or list node is kept per entry.
+ * Keys can be looked up from any CharSequence or from a byte slice without
+ * creating a String. */
+public class CoryCaddellStringMap<V> implements CoryCaddellMap<String, V> {
+	
+	// Define default table size.  Must be a power of 2
+	private static int DEFAULT_INITIAL_CAPACITY = 4;
+	
+	// Define maximum table size. 1 << 30 is the same as 2 ^ 30
+	private static int MAXIMUM_CAPACITY = 1 << 30;
+	
+	// Define default load factor
+	private static float DEFAULT_MAX_LOAD_FACTOR = 0.75f;
+	
+	// Offset stored in a slot that holds no entry
+	private static final int EMPTY = -1;
+	
+	// Current table capacity.  Capacity is a power of 2
+	private int capacity;
+	
+	// Specify a load factor used in the table
+	private float loadFactorThreshold;
+	
+	// Number of entries in map
+	private int size = 0;
+	
+	// Per-slot key offset into the arena, key length, cached hash and value
+	private int[] offsets;
+	private int[] lengths;
+	private int[] hashes;
+	private Object[] values;
+	
+	// Key bytes for every entry, one after another
+	private byte[] arena;
+	
+	// Number of bytes used in the arena
+	private int arenaSize = 0;
+	
+	// Number of arena bytes belonging to removed keys
+	private int deadBytes = 0;
+	
+	/** Construct a map default capacity and load factor */
+	public CoryCaddellStringMap() {
+		this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_LOAD_FACTOR);
+	}
+	
+	/** Construct a map with specified initial capacity and default load factor */
+	public CoryCaddellStringMap(int initialCapacity) {
+		this(initialCapacity, DEFAULT_MAX_LOAD_FACTOR);
+	}
+	
+	/** Construct a map with specified initial capacity and load factor.
+	 * The load factor must be between 0 and 1.  Whatever it is, the table
+	 * grows before its last empty slot is used, since a linear probe only
+	 * stops on reaching one */
+	public CoryCaddellStringMap(int initialCapacity, float loadFactorThreshold) {
+		if (loadFactorThreshold <= 0 || loadFactorThreshold >= 1) {
+			throw new IllegalArgumentException("Load factor must be between 0 and 1");
+		}
+		
+		if (initialCapacity > MAXIMUM_CAPACITY) {
+			this.capacity = MAXIMUM_CAPACITY;
+		}
+		else {
+			this.capacity = trimToPowerOf2(initialCapacity);
+		}
+		
+		this.loadFactorThreshold = loadFactorThreshold;
+		allocate(capacity);
+		arena = new byte[capacity * 8];	// Room for short keys before growing
+	}
+	
+	@Override
+	/** Remove all entries from this map */
+	public void clear() {
+		size = 0;
+		arenaSize = 0;
+		deadBytes = 0;
+		Arrays.fill(offsets, EMPTY);
+		Arrays.fill(values, null);
+	}
+	
+	@Override
+	/** Return true if specified key is in map */
+	public boolean containsKey(String key) {
+		return containsKey((CharSequence) key);
+	}
+	
+	/** Return true if specified key is in map */
+	public boolean containsKey(CharSequence key) {
+		return find(key) >= 0;
+	}
+	
+	/** Return true if the key in bytes[offset, offset + length) is in map */
+	public boolean containsKey(byte[] bytes, int offset, int length) {
+		return find(bytes, offset, length) >= 0;
+	}
+	
+	@Override
+	/** Return true if map contains value */
+	public boolean containsValue(V value) {
+		for (int i = 0; i < capacity; i++) {
+			if (offsets[i] != EMPTY && Objects.equals(values[i], value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	/** Return a set of entries in the map.  Keys are materialized as Strings */
+	public Set<CoryCaddellMap.Entry<String, V>> entrySet() {
+		Set<CoryCaddellMap.Entry<String, V>> set = new HashSet<>();
+		
+		for (int i = 0; i < capacity; i++) {
+			if (offsets[i] != EMPTY) {
+				set.add(new CoryCaddellMap.Entry<String, V>(keyAt(i), valueAt(i)));
+			}
+		}
+		
+		return set;
+	}
+	
+	@Override
+	/** Return the value that matches the specified key */
+	public V get(String key) {
+		return get((CharSequence) key);
+	}
+	
+	/** Return the value that matches the specified key */
+	public V get(CharSequence key) {
+		int index = find(key);
+		return index >= 0 ? valueAt(index) : null;
+	}
+	
+	/** Return the value for the key in bytes[offset, offset + length) */
+	public V get(byte[] bytes, int offset, int length) {
+		int index = find(bytes, offset, length);
+		return index >= 0 ? valueAt(index) : null;
+	}
+	
+	@Override
+	/** Return true if this map contains no entries */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	@Override
+	/** Return a set consisting of keys in this map */
+	public Set<String> keySet() {
+		Set<String> set = new HashSet<>();
+		
+		for (int i = 0; i < capacity; i++) {
+			if (offsets[i] != EMPTY) {
+				set.add(keyAt(i));
+			}
+		}
+		return set;
+	}
+	
+	@Override
+	/** Add an entry (key, value) into the map.  Every character of the
+	 * key must be in the Latin-1 range */
+	public V put(String key, V value) {
+		int index = find(key);
+		
+		if (index >= 0) {
+			V oldValue = valueAt(index);
+			values[index] = value;
+			
+			return oldValue;
+		}
+		
+		// Check load factor, and keep one slot empty even in a tiny table
+		if (size >= capacity * loadFactorThreshold || size + 1 >= capacity) {
+			if (capacity == MAXIMUM_CAPACITY) {
+				throw new RuntimeException("Exceeding maximum capacity");
+			}
+			rebuild(capacity << 1);
+			index = find(key);	// Slot moved with the new capacity
+		}
+		
+		// Copy the key into the arena
+		int length = key.length();
+		ensureArenaCapacity(length);
+		int offset = arenaSize;
+		for (int i = 0; i < length; i++) {
+			char c = key.charAt(i);
+			if (c > 0xFF) {
+				throw new IllegalArgumentException("Key is not Latin-1: " + key);
+			}
+			arena[offset + i] = (byte) c;
+		}
+		arenaSize += length;
+		
+		// find() returned the free slot as ~index
+		index = ~index;
+		offsets[index] = offset;
+		lengths[index] = length;
+		hashes[index] = hash(key);
+		values[index] = value;
+		
+		size++;
+		
+		return value;
+	}
+	
+	@Override
+	/** Remove the entry for the specified key */
+	public void remove(String key) {
+		remove((CharSequence) key);
+	}
+	
+	/** Remove the entry for the specified key */
+	public void remove(CharSequence key) {
+		int index = find(key);
+		if (index < 0) {
+			return;
+		}
+		
+		deadBytes += lengths[index];
+		deleteSlot(index);
+		size--;	// Decrease size
+		
+		// Reclaim arena space once more than half of it is garbage
+		if (deadBytes > arenaSize / 2) {
+			rebuild(capacity);
+		}
+	}
+	
+	@Override
+	/** Return the number of entries in this map */
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	/** Return a set consisting of value in this map */
+	public Set<V> values() {
+		Set<V> set = new HashSet<>();
+		
+		for (int i = 0; i < capacity; i++) {
+			if (offsets[i] != EMPTY) {
+				set.add(valueAt(i));
+			}
+		}
+		
+		return set;
+	}
+	
+	/** Return the slot holding key, or ~slot of the free slot where it would go */
+	private int find(CharSequence key) {
+		int h = hash(key);
+		if (h == EMPTY) {
+			return -1;	// Not Latin-1, so it can't be in the map
+		}
+		
+		int index = h & (capacity - 1);
+		while (offsets[index] != EMPTY) {
+			if (hashes[index] == h && keyEquals(index, key)) {
+				return index;
+			}
+			index = (index + 1) & (capacity - 1);	// Linear probe
+		}
+		
+		return ~index;
+	}
+	
+	/** Return the slot holding the key in bytes, or a negative value if absent */
+	private int find(byte[] bytes, int offset, int length) {
+		int h = 0;
+		for (int i = 0; i < length; i++) {
+			h = 31 * h + (bytes[offset + i] & 0xFF);
+		}
+		h = spread(h);
+		
+		int index = h & (capacity - 1);
+		while (offsets[index] != EMPTY) {
+			if (hashes[index] == h && lengths[index] == length
+					&& Arrays.equals(arena, offsets[index], offsets[index] + length,
+							bytes, offset, offset + length)) {
+				return index;
+			}
+			index = (index + 1) & (capacity - 1);	// Linear probe
+		}
+		
+		return -1;
+	}
+	
+	/** Return the first free slot at or after index */
+	private int freeSlot(int index) {
+		while (offsets[index] != EMPTY) {
+			index = (index + 1) & (capacity - 1);
+		}
+		return index;
+	}
+	
+	/** Return true if the key stored in slot index equals key */
+	private boolean keyEquals(int index, CharSequence key) {
+		int length = lengths[index];
+		if (key.length() != length) {
+			return false;
+		}
+		
+		int offset = offsets[index];
+		for (int i = 0; i < length; i++) {
+			if ((arena[offset + i] & 0xFF) != key.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/** Empty slot index, shifting later entries of the probe run back into it */
+	private void deleteSlot(int index) {
+		int hole = index;
+		int next = (hole + 1) & (capacity - 1);
+		
+		while (offsets[next] != EMPTY) {
+			int home = hashes[next] & (capacity - 1);
+			
+			// Move the entry if its home slot is not between the hole and itself
+			if (((next - home) & (capacity - 1)) >= ((next - hole) & (capacity - 1))) {
+				offsets[hole] = offsets[next];
+				lengths[hole] = lengths[next];
+				hashes[hole] = hashes[next];
+				values[hole] = values[next];
+				hole = next;
+			}
+			next = (next + 1) & (capacity - 1);
+		}
+		
+		offsets[hole] = EMPTY;
+		values[hole] = null;
+	}
+	
+	/** Hash a key the same way String.hashCode() does for Latin-1 strings.
+	 * Return EMPTY if the key has a character outside Latin-1 */
+	private static int hash(CharSequence key) {
+		int h = 0;
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c > 0xFF) {
+				return EMPTY;
+			}
+			h = 31 * h + c;
+		}
+		return spread(h);
+	}
+	
+	/** Spread a hash code, keeping it clear of the EMPTY marker */
+	private static int spread(int h) {
+		return CoryCaddellHashMap.supplementalHash(h) & 0x7FFFFFFF;
+	}
+	
+	/** Return the key in slot index as a String */
+	private String keyAt(int index) {
+		return new String(arena, offsets[index], lengths[index], StandardCharsets.ISO_8859_1);
+	}
+	
+	/** Return the value in slot index */
+	@SuppressWarnings("unchecked")
+	private V valueAt(int index) {
+		return (V) values[index];
+	}
+	
+	/** Allocate empty slot arrays for the specified capacity */
+	private void allocate(int capacity) {
+		offsets = new int[capacity];
+		lengths = new int[capacity];
+		hashes = new int[capacity];
+		values = new Object[capacity];
+		Arrays.fill(offsets, EMPTY);
+	}
+	
+	/** Grow the arena so it can take length more bytes */
+	private void ensureArenaCapacity(int length) {
+		if (arenaSize + length > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arena.length << 1, arenaSize + length));
+		}
+	}
+	
+	/** Move every entry into tables of newCapacity slots and a compacted arena.
+	 * Cached hashes are reused, so no key is hashed again */
+	private void rebuild(int newCapacity) {
+		int[] oldOffsets = offsets;
+		int[] oldLengths = lengths;
+		int[] oldHashes = hashes;
+		Object[] oldValues = values;
+		byte[] oldArena = arena;
+		int oldCapacity = capacity;
+		
+		capacity = newCapacity;
+		allocate(capacity);
+		arena = new byte[Math.max(arenaSize - deadBytes, 16)];
+		arenaSize = 0;
+		deadBytes = 0;
+		
+		for (int i = 0; i < oldCapacity; i++) {
+			if (oldOffsets[i] != EMPTY) {
+				int index = freeSlot(oldHashes[i] & (capacity - 1));
+				
+				System.arraycopy(oldArena, oldOffsets[i], arena, arenaSize, oldLengths[i]);
+				offsets[index] = arenaSize;
+				lengths[index] = oldLengths[i];
+				hashes[index] = oldHashes[i];
+				values[index] = oldValues[i];
+				arenaSize += oldLengths[i];
+			}
+		}
+	}
+	
+	/** Return a power of 2 for initialCapacity */
+	private int trimToPowerOf2( int initialCapacity ) {
+		int capacity = 1;
+		while (capacity < initialCapacity) {
+			capacity <<=1;	// Same as capacity *= 2. <= is more efficient
+		}
+		
+		return capacity;
+	}
+	
+	@Override
+	/** Return a string representation for this map */
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		
+		for (int i = 0; i < capacity; i++) {
+			if (offsets[i] != EMPTY) {
+				builder.append("[" + keyAt(i) + ", " + values[i] + "]");
+			}
+		}
+		
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,120 @@
+// CoryCaddellSwissBenchmark.java
+
+import java.util.*;
+import java.util.function.Predicate;
+
+public class CoryCaddellSwissBenchmark {
+	
+	// Load factor every table is built with and filled to
+	private static final float LOAD_FACTOR = 0.875f;
+	
+	// Table sizes measured: one that fits in cache and one that doesn't
+	private static final int[] CAPACITIES = {1 << 12, 1 << 20};
+	
+	// Number of lookups measured per run
+	private static final int LOOKUPS = 4_000_000;
+	
+	// Number of untimed runs so the JIT has compiled each path first
+	private static final int WARMUP_ROUNDS = 5;
+	
+	// Number of timed runs; the fastest one is reported
+	private static final int TIMED_ROUNDS = 5;
+	
+	// Keeps results alive so the JIT can't drop the lookups being measured
+	private static long sink = 0;
+	
+	/** Print nanoseconds per lookup for CoryCaddellSwissHashMap against
+	 * CoryCaddellHashMap's LinkedList buckets and java.util.HashMap, and for
+	 * CoryCaddellSwissHashSet against CoryCaddellHashSet and java.util.HashSet.
+	 * Every table is built at a load factor of 0.875 and filled just short of
+	 * growing, so probes run at that load.  Hits and misses are timed apart */
+	public static void main(String[] args) {
+		System.out.printf("%-10s%-30s%12s%12s\n", "Entries", "Table", "Hit ns", "Miss ns");
+		System.out.printf("%-10s%-30s%12s%12s\n", "-------", "-----", "------", "-------");
+		
+		for (int capacity: CAPACITIES) {
+			int count = (int) (capacity * LOAD_FACTOR) - 1;
+			String[] keys = new String[count];
+			String[] missingKeys = new String[count];
+			for (int i = 0; i < count; i++) {
+				keys[i] = "key-" + i;
+				missingKeys[i] = "missing-" + i;
+			}
+			String[] hits = lookupOrder(keys);
+			String[] misses = lookupOrder(missingKeys);
+			
+			CoryCaddellSwissHashMap<String, Integer> swissMap =
+					new CoryCaddellSwissHashMap<>(capacity, LOAD_FACTOR);
+			CoryCaddellHashMap<String, Integer> listMap = new CoryCaddellHashMap<>(capacity, LOAD_FACTOR);
+			HashMap<String, Integer> javaMap = new HashMap<>(capacity, LOAD_FACTOR);
+			CoryCaddellSwissHashSet<String> swissSet = new CoryCaddellSwissHashSet<>(capacity, LOAD_FACTOR);
+			CoryCaddellHashSet<String> listSet = new CoryCaddellHashSet<>(capacity, LOAD_FACTOR);
+			HashSet<String> javaSet = new HashSet<>(capacity, LOAD_FACTOR);
+			for (int i = 0; i < count; i++) {
+				swissMap.put(keys[i], i);
+				listMap.put(keys[i], i);
+				javaMap.put(keys[i], i);
+				swissSet.add(keys[i]);
+				listSet.add(keys[i]);
+				javaSet.add(keys[i]);
+			}
+			
+			String[] names = {"CoryCaddellSwissHashMap", "CoryCaddellHashMap", "java.util.HashMap",
+					"CoryCaddellSwissHashSet", "CoryCaddellHashSet", "java.util.HashSet"};
+			List<Predicate<String>> lookups = List.of(
+					key -> swissMap.get(key) != null,
+					key -> listMap.get(key) != null,
+					key -> javaMap.get(key) != null,
+					swissSet::contains,
+					listSet::contains,
+					javaSet::contains);
+			
+			// Run every table through run() first, so its call to lookup is
+			// equally slow for all of them instead of fastest for the first
+			for (Predicate<String> lookup: lookups) {
+				run(hits, lookup);
+			}
+			
+			for (int i = 0; i < names.length; i++) {
+				System.out.printf("%-10d%-30s%12.1f%12.1f\n", count, names[i],
+						fastest(hits, lookups.get(i)), fastest(misses, lookups.get(i)));
+			}
+		}
+	}
+	
+	/** Return LOOKUPS keys drawn at random from keys */
+	private static String[] lookupOrder(String[] keys) {
+		Random random = new Random(keys.length);
+		String[] order = new String[LOOKUPS];
+		for (int i = 0; i < LOOKUPS; i++) {
+			order[i] = keys[random.nextInt(keys.length)];
+		}
+		return order;
+	}
+	
+	/** Look up every key until warm and return the fastest timed run in
+	 * nanoseconds per lookup */
+	private static double fastest(String[] keys, Predicate<String> lookup) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			run(keys, lookup);
+		}
+		
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < TIMED_ROUNDS; i++) {
+			long start = System.nanoTime();
+			run(keys, lookup);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		
+		return (double) best / keys.length;
+	}
+	
+	/** Look up every key once */
+	private static void run(String[] keys, Predicate<String> lookup) {
+		for (String key: keys) {
+			if (lookup.test(key)) {
+				sink++;
+			}
+		}
+	}
+}
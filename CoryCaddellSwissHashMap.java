@@ -0,0 +1,368 @@
+// CoryCaddellSwissHashMap.java
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/** An experimental Swiss-table map.  Slots are split into groups of 8, and
+ * each slot has a control byte holding either EMPTY, DELETED or a 7-bit tag
+ * taken from the key's hash.  A lookup reads a whole group's control bytes as
+ * one long and compares all 8 tags at once with bit tricks, so equals() is
+ * only called on slots whose tag matches.  That keeps lookups fast at high
+ * load factors, which is why the default is 0.875. */
+public class CoryCaddellSwissHashMap<K, V> implements CoryCaddellMap<K, V> {
+	
+	// Number of slots in a group, one control byte each, read as one long
+	private static final int GROUP_WIDTH = 8;
+	
+	// Define default table size.  Must be a power of 2 and at least GROUP_WIDTH
+	private static int DEFAULT_INITIAL_CAPACITY = 16;
+	
+	// Define maximum table size. 1 << 30 is the same as 2 ^ 30
+	private static int MAXIMUM_CAPACITY = 1 << 30;
+	
+	// Define default load factor
+	private static float DEFAULT_MAX_LOAD_FACTOR = 0.875f;
+	
+	// Control byte for a slot that has never held an entry
+	private static final byte EMPTY = (byte) 0x80;
+	
+	// Control byte for a slot whose entry was removed
+	private static final byte DELETED = (byte) 0xFE;
+	
+	// 0x01 and 0x80 repeated in every byte of a long
+	private static final long LSBS = 0x0101010101010101L;
+	private static final long MSBS = 0x8080808080808080L;
+	
+	// Reads 8 control bytes as a little-endian long, so byte i is bits 8i to 8i+7
+	private static final VarHandle GROUP = MethodHandles.byteArrayViewVarHandle(
+			long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	// Current table capacity.  Capacity is a power of 2
+	private int capacity;
+	
+	// Specify a load factor used in the table
+	private float loadFactorThreshold;
+	
+	// Number of entries in map
+	private int size = 0;
+	
+	// Number of DELETED control bytes
+	private int deleted = 0;
+	
+	// Per-slot control byte, key and value
+	private byte[] control;
+	private Object[] keys;
+	private Object[] values;
+	
+	/** Construct a map default capacity and load factor */
+	public CoryCaddellSwissHashMap() {
+		this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_LOAD_FACTOR);
+	}
+	
+	/** Construct a map with specified initial capacity and default load factor */
+	public CoryCaddellSwissHashMap(int initialCapacity) {
+		this(initialCapacity, DEFAULT_MAX_LOAD_FACTOR);
+	}
+	
+	/** Construct a map with specified initial capacity and load factor.  The
+	 * load factor must be between 0 and 1.  Whatever it is, the table grows
+	 * before its last EMPTY slot is used, since a probe only stops on one */
+	public CoryCaddellSwissHashMap(int initialCapacity, float loadFactorThreshold) {
+		if (loadFactorThreshold <= 0 || loadFactorThreshold >= 1) {
+			throw new IllegalArgumentException("Load factor must be between 0 and 1");
+		}
+		
+		capacity = GROUP_WIDTH;
+		while (capacity < Math.min(initialCapacity, MAXIMUM_CAPACITY)) {
+			capacity <<= 1;
+		}
+		
+		this.loadFactorThreshold = loadFactorThreshold;
+		allocate(capacity);
+	}
+	
+	@Override
+	/** Remove all entries from this map */
+	public void clear() {
+		size = 0;
+		deleted = 0;
+		Arrays.fill(control, EMPTY);
+		Arrays.fill(keys, null);
+		Arrays.fill(values, null);
+	}
+	
+	@Override
+	/** Return true if specified key is in map */
+	public boolean containsKey(K key) {
+		return find(key, hash(key)) >= 0;
+	}
+	
+	@Override
+	/** Return true if map contains value */
+	public boolean containsValue(V value) {
+		for (int i = 0; i < capacity; i++) {
+			if (control[i] >= 0 && Objects.equals(values[i], value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	/** Return a set of entries in the map */
+	public Set<CoryCaddellMap.Entry<K, V>> entrySet() {
+		Set<CoryCaddellMap.Entry<K, V>> set = new HashSet<>();
+		
+		for (int i = 0; i < capacity; i++) {
+			if (control[i] >= 0) {	// Tags are 0 to 127; EMPTY and DELETED are negative
+				set.add(new CoryCaddellMap.Entry<K, V>(keyAt(i), valueAt(i)));
+			}
+		}
+		
+		return set;
+	}
+	
+	@Override
+	/** Return the value that matches the specified key */
+	public V get(K key) {
+		int index = find(key, hash(key));
+		return index >= 0 ? valueAt(index) : null;
+	}
+	
+	@Override
+	/** Return true if this map contains no entries */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	@Override
+	/** Return a set consisting of keys in this map */
+	public Set<K> keySet() {
+		Set<K> set = new HashSet<>();
+		
+		for (int i = 0; i < capacity; i++) {
+			if (control[i] >= 0) {
+				set.add(keyAt(i));
+			}
+		}
+		return set;
+	}
+	
+	@Override
+	/** Add an entry (key, value) into the map */
+	public V put(K key, V value) {
+		int h = hash(key);
+		int index = find(key, h);
+		
+		if (index >= 0) {
+			V oldValue = valueAt(index);
+			values[index] = value;
+			
+			return oldValue;
+		}
+		
+		// Check load factor.  DELETED slots count since they also lengthen probes,
+		// and the threshold never passes capacity - 1 so one slot stays EMPTY
+		if (size + deleted >= Math.min(capacity * loadFactorThreshold, capacity - 1)) {
+			if (size >= capacity * loadFactorThreshold / 2) {
+				if (capacity == MAXIMUM_CAPACITY) {
+					throw new RuntimeException("Exceeding maximum capacity");
+				}
+				rehash(capacity << 1);
+			}
+			else {
+				rehash(capacity);	// Mostly DELETED, so clean up in place
+			}
+		}
+		
+		index = findFreeSlot(h);
+		if (control[index] == DELETED) {
+			deleted--;
+		}
+		
+		control[index] = tag(h);
+		keys[index] = key;
+		values[index] = value;
+		size++;
+		
+		return value;
+	}
+	
+	@Override
+	/** Remove the entry for the specified key */
+	public void remove(K key) {
+		int index = find(key, hash(key));
+		if (index < 0) {
+			return;
+		}
+		
+		// A group that still has an EMPTY slot stops every probe that reaches
+		// it, so the slot can go back to EMPTY instead of leaving a DELETED
+		int group = index & ~(GROUP_WIDTH - 1);
+		if (matchEmpty(groupAt(group)) != 0) {
+			control[index] = EMPTY;
+		}
+		else {
+			control[index] = DELETED;
+			deleted++;
+		}
+		
+		keys[index] = null;
+		values[index] = null;
+		size--;	// Decrease size
+	}
+	
+	@Override
+	/** Return the number of entries in this map */
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	/** Return a set consisting of value in this map */
+	public Set<V> values() {
+		Set<V> set = new HashSet<>();
+		
+		for (int i = 0; i < capacity; i++) {
+			if (control[i] >= 0) {
+				set.add(valueAt(i));
+			}
+		}
+		
+		return set;
+	}
+	
+	/** Return the slot holding key, or -1 if key is not in the map */
+	private int find(K key, int h) {
+		long tagBits = LSBS * tag(h);
+		int groupMask = (capacity / GROUP_WIDTH) - 1;
+		int group = (h >>> 7) & groupMask;
+		
+		for (int step = 1; ; step++) {
+			long word = groupAt(group * GROUP_WIDTH);
+			
+			// Visit every slot whose tag matches.  A rare false match is
+			// harmless since the key is compared anyway
+			for (long matches = matchByte(word, tagBits); matches != 0; matches &= matches - 1) {
+				int index = group * GROUP_WIDTH + (Long.numberOfTrailingZeros(matches) >>> 3);
+				if (key.equals(keys[index])) {
+					return index;
+				}
+			}
+			
+			if (matchEmpty(word) != 0) {
+				return -1;	// The key would have been placed before this EMPTY
+			}
+			
+			group = (group + step) & groupMask;	// Triangular probe visits every group
+		}
+	}
+	
+	/** Return the first EMPTY or DELETED slot on the probe sequence for h */
+	private int findFreeSlot(int h) {
+		int groupMask = (capacity / GROUP_WIDTH) - 1;
+		int group = (h >>> 7) & groupMask;
+		
+		for (int step = 1; ; step++) {
+			long free = matchEmptyOrDeleted(groupAt(group * GROUP_WIDTH));
+			if (free != 0) {
+				return group * GROUP_WIDTH + (Long.numberOfTrailingZeros(free) >>> 3);
+			}
+			group = (group + step) & groupMask;
+		}
+	}
+	
+	/** Return the 8 control bytes starting at slot index as one long */
+	private long groupAt(int index) {
+		return (long) GROUP.get(control, index);
+	}
+	
+	/** Return the high bit of every byte of word equal to the byte repeated
+	 * in bytes.  May also flag a byte just above a real match */
+	private static long matchByte(long word, long bytes) {
+		long x = word ^ bytes;
+		return (x - LSBS) & ~x & MSBS;
+	}
+	
+	/** Return the high bit of every EMPTY byte of word.  EMPTY is the only
+	 * control byte with the high bit set and bit 1 clear */
+	private static long matchEmpty(long word) {
+		return word & (~word << 6) & MSBS;
+	}
+	
+	/** Return the high bit of every EMPTY or DELETED byte of word.  Those are
+	 * the only control bytes with the high bit set and bit 0 clear */
+	private static long matchEmptyOrDeleted(long word) {
+		return word & ~(word << 7) & MSBS;
+	}
+	
+	/** Mix a key's hash code.  The low 7 bits become the tag and the rest
+	 * pick the first group to probe */
+	private static int hash(Object key) {
+		return CoryCaddellHashMap.supplementalHash(key.hashCode()) * 0x9E3779B9;
+	}
+	
+	/** Return the 7-bit tag stored in the control byte for hash h */
+	private static byte tag(int h) {
+		return (byte) (h & 0x7F);
+	}
+	
+	/** Return the key in slot index */
+	@SuppressWarnings("unchecked")
+	private K keyAt(int index) {
+		return (K) keys[index];
+	}
+	
+	/** Return the value in slot index */
+	@SuppressWarnings("unchecked")
+	private V valueAt(int index) {
+		return (V) values[index];
+	}
+	
+	/** Allocate empty slot arrays for the specified capacity */
+	private void allocate(int capacity) {
+		control = new byte[capacity];
+		keys = new Object[capacity];
+		values = new Object[capacity];
+		Arrays.fill(control, EMPTY);
+	}
+	
+	/** Move every entry into a table of newCapacity slots, dropping DELETED marks */
+	private void rehash(int newCapacity) {
+		byte[] oldControl = control;
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		int oldCapacity = capacity;
+		
+		capacity = newCapacity;
+		allocate(capacity);
+		deleted = 0;
+		
+		for (int i = 0; i < oldCapacity; i++) {
+			if (oldControl[i] >= 0) {
+				int h = hash(oldKeys[i]);
+				int index = findFreeSlot(h);
+				control[index] = tag(h);
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+	
+	@Override
+	/** Return a string representation for this map */
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		
+		for (int i = 0; i < capacity; i++) {
+			if (control[i] >= 0) {
+				builder.append("[" + keys[i] + ", " + values[i] + "]");
+			}
+		}
+		
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,184 @@
+// CoryCaddellSwissHashSet.java
+
+import java.util.*;
+
+/** An experimental set on top of CoryCaddellSwissHashMap, for comparing
+ * against CoryCaddellHashSet.  Each element is a key in the map, so
+ * contains() gets the same group-at-a-time tag matching.  The default load
+ * factor is 0.875 like the map's. */
+public class CoryCaddellSwissHashSet<E> implements Collection<E> {
+	
+	// Define default table size
+	private static int DEFAULT_INITIAL_CAPACITY = 16;
+	
+	// Define default load factor
+	private static float DEFAULT_MAX_LOAD_FACTOR = 0.875f;
+	
+	// Value stored with every element in the map
+	private static final Boolean PRESENT = Boolean.TRUE;
+	
+	// Map whose keys are the elements of this set
+	private CoryCaddellSwissHashMap<E, Boolean> map;
+	
+	/** Construct a set with the default capacity and load factor */
+	public CoryCaddellSwissHashSet() {
+		this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_LOAD_FACTOR);
+	}
+	
+	/** Construct a set with the specified initial capacity and
+	 * default load factor */
+	public CoryCaddellSwissHashSet(int initialCapacity) {
+		this(initialCapacity, DEFAULT_MAX_LOAD_FACTOR);
+	}
+	
+	/** Construct a set with the specified initial capacity and load factor,
+	 * which must be between 0 and 1 */
+	public CoryCaddellSwissHashSet(int initialCapacity, float loadFactorThreshold) {
+		map = new CoryCaddellSwissHashMap<>(initialCapacity, loadFactorThreshold);
+	}
+	
+	@Override
+	/** Remove all elements from the set */
+	public void clear() {
+		map.clear();
+	}
+	
+	@Override
+	/** Return true if the element is in the set */
+	@SuppressWarnings("unchecked")
+	public boolean contains(Object e) {
+		return map.containsKey((E) e);	// The map only calls hashCode() and equals()
+	}
+	
+	@Override
+	/** Add an element to the set */
+	public boolean add(E e) {
+		int oldSize = map.size();
+		map.put(e, PRESENT);
+		
+		return map.size() > oldSize;	// One probe instead of contains() then put()
+	}
+	
+	@Override
+	/** Remove the element from the set */
+	@SuppressWarnings("unchecked")
+	public boolean remove(Object e) {
+		int oldSize = map.size();
+		map.remove((E) e);
+		
+		return map.size() < oldSize;
+	}
+	
+	@Override
+	/** Return true if set contains no elements */
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+	
+	@Override
+	/** Return the number of elements in the set */
+	public int size() {
+		return map.size();
+	}
+	
+	@Override
+	/** Return an iterator over a copy of the elements.  Its remove() removes
+	 * from this set */
+	public Iterator<E> iterator() {
+		return new CoryCaddellSwissHashSetIterator();
+	}
+	
+	/** Inner class for iterator */
+	private class CoryCaddellSwissHashSetIterator implements Iterator<E> {
+		// Store the elements in a list
+		private ArrayList<E> list = new ArrayList<>(map.keySet());
+		private int current = 0;	// point to the current element in list
+		
+		@Override
+		/** Next element for traversing? */
+		public boolean hasNext() {
+			return current < list.size();
+		}
+		
+		@Override
+		/** Get current element and move cursor to the next */
+		public E next() {
+			if (current >= list.size()) {
+				throw new NoSuchElementException();
+			}
+			return list.get(current++);
+		}
+		
+		@Override
+		/** Remove the element returned by the last next() */
+		public void remove() {
+			if (current == 0 || list.get(current - 1) == null) {
+				throw new IllegalStateException();
+			}
+			CoryCaddellSwissHashSet.this.remove(list.get(current - 1));
+			list.set(current - 1, null);	// So it can't be removed twice
+		}
+	}
+	
+	@Override
+	/** Add each element of collection to set.  Return true if the set changed */
+	public boolean addAll(Collection<? extends E> c) {
+		boolean changed = false;
+		for (E e: c) {
+			changed |= add(e);
+		}
+		return changed;
+	}
+	
+	@Override
+	/** Return true if every element of collection is in set */
+	public boolean containsAll(Collection<?> c) {
+		for (Object e: c) {
+			if (!contains(e)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	/** Remove each element of collection from set.  Return true if the set changed */
+	public boolean removeAll(Collection<?> c) {
+		boolean changed = false;
+		for (Object e: c) {
+			changed |= remove(e);
+		}
+		return changed;
+	}
+	
+	@Override
+	/** Remove the elements of set not in collection.  Return true if the set changed */
+	public boolean retainAll(Collection<?> c) {
+		boolean changed = false;
+		for (E e: map.keySet()) {
+			if (!c.contains(e)) {
+				map.remove(e);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+	
+	@Override
+	/** Return an array containing each element of the set */
+	public Object[] toArray() {
+		return map.keySet().toArray();
+	}
+	
+	@Override
+	/** Return an array of T containing each element of the set */
+	public <T> T[] toArray(T[] a) {
+		return map.keySet().toArray(a);
+	}
+	
+	@Override
+	/** Return a string representation for this set */
+	public String toString() {
+		return map.keySet().toString();
+	}
+}
@@ -0,0 +1,69 @@
+// CoryCaddellValueIndexBenchmark.java
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+public class CoryCaddellValueIndexBenchmark {
+	
+	// Number of entries in each map measured
+	private static final int ENTRY_COUNT = 100_000;
+	
+	// Heap usage, read after a full collection
+	private static MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+	
+	// Keeps maps alive until their heap usage has been read
+	private static long sink = 0;
+	
+	/** Print the heap a CoryCaddellHashMap retains per entry with and without
+	 * the value index, for unique values and for values shared by several
+	 * keys.  The difference is what the index costs.  Keys and values are
+	 * created up front, so only the maps themselves are counted */
+	public static void main(String[] args) {
+		String[] keys = new String[ENTRY_COUNT];
+		Integer[] values = new Integer[ENTRY_COUNT];
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			keys[i] = "key" + i;
+			values[i] = i + 1000;	// Outside the Integer cache, so boxed once here
+		}
+		
+		System.out.printf("%-32s%14s%14s%14s\n", "Values", "Plain B/entry", "Index B/entry", "Extra B/entry");
+		System.out.printf("%-32s%14s%14s%14s\n", "------", "-------------", "-------------", "-------------");
+		
+		for (int keysPerValue: new int[] {1, 2, 4, 16}) {
+			long plain = bytesPerEntry(keys, values, keysPerValue, false);
+			long indexed = bytesPerEntry(keys, values, keysPerValue, true);
+			String name = keysPerValue == 1 ? "unique" : keysPerValue + " keys per value";
+			System.out.printf("%-32s%14d%14d%14d\n", name, plain, indexed, indexed - plain);
+		}
+	}
+	
+	/** Return the heap retained per entry by a map where each value is shared
+	 * by keysPerValue keys */
+	private static long bytesPerEntry(String[] keys, Integer[] values, int keysPerValue,
+			boolean indexValues) {
+		long before = usedHeap();
+		CoryCaddellHashMap<String, Integer> map = build(keys, values, keysPerValue, indexValues);
+		long bytes = usedHeap() - before;
+		sink += map.size();
+		
+		return bytes / ENTRY_COUNT;
+	}
+	
+	/** Return the heap in use after collecting everything unreachable */
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();	// Repeated since one request may not finish the job
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+	
+	/** Build a map of every key, with keysPerValue keys sharing each value */
+	private static CoryCaddellHashMap<String, Integer> build(String[] keys, Integer[] values,
+			int keysPerValue, boolean indexValues) {
+		CoryCaddellHashMap<String, Integer> map = new CoryCaddellHashMap<>(16, 0.75f, indexValues);
+		for (int i = 0; i < keys.length; i++) {
+			map.put(keys[i], values[i / keysPerValue]);
+		}
+		return map;
+	}
+}